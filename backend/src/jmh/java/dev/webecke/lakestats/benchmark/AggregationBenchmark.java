@@ -0,0 +1,63 @@
+package dev.webecke.lakestats.benchmark;
+
+import dev.webecke.lakestats.aggregator.CurrentConditionsAggregator;
+import dev.webecke.lakestats.aggregator.HistoricalDataAggregator;
+import dev.webecke.lakestats.model.CollectorResponse;
+import dev.webecke.lakestats.model.HistoricalPeriodData;
+import dev.webecke.lakestats.model.TimeSeriesData;
+import dev.webecke.lakestats.model.features.CurrentConditions;
+import dev.webecke.lakestats.model.geography.Lake;
+import dev.webecke.lakestats.model.measurements.DataType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The aggregation stage of a run: current conditions, the past 365 days, and building the period data itself
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class AggregationBenchmark {
+    @Param({"1", "10", "50"})
+    private int years;
+
+    private final CurrentConditionsAggregator currentConditionsAggregator = new CurrentConditionsAggregator(30);
+    private final HistoricalDataAggregator historicalDataAggregator = new HistoricalDataAggregator();
+    private Lake lake;
+    private CollectorResponse<TimeSeriesData> response;
+    private List<TimeSeriesData.TimeSeriesEntry> lastYearEntries;
+
+    @Setup
+    public void setUp() {
+        lake = UsbrFixtures.lake();
+        TimeSeriesData series = UsbrFixtures.elevationSeries(years);
+        response = new CollectorResponse<>(series, true, LocalDateTime.now());
+        lastYearEntries = series.entries(series.size() - 365, series.size());
+    }
+
+    @Benchmark
+    public CurrentConditions aggregateCurrentConditions() {
+        return currentConditionsAggregator.aggregateCurrentConditions(response, lake);
+    }
+
+    @Benchmark
+    public HistoricalPeriodData past365days() {
+        return historicalDataAggregator.past365days(response.data(), UsbrFixtures.TODAY);
+    }
+
+    @Benchmark
+    public HistoricalPeriodData createPeriodData() {
+        return HistoricalPeriodData.create(UsbrFixtures.LAKE_ID, HistoricalPeriodData.PeriodType.ROLLING_YEAR,
+                DataType.ELEVATION, lastYearEntries);
+    }
+}
@@ -0,0 +1,56 @@
+package dev.webecke.lakestats.benchmark;
+
+import dev.webecke.lakestats.aggregator.CurrentConditionsAggregator;
+import dev.webecke.lakestats.aggregator.HistoricalDataAggregator;
+import dev.webecke.lakestats.model.CollectorResponse;
+import dev.webecke.lakestats.model.HistoricalPeriodData;
+import dev.webecke.lakestats.model.TimeSeriesData;
+import dev.webecke.lakestats.model.features.CurrentConditions;
+import dev.webecke.lakestats.utils.Serializer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Turning what a run publishes into Firestore documents. The documents don't depend on the length of the history,
+ * so a single ten year fixture is used.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class SerializerBenchmark {
+    private final Serializer serializer = new Serializer();
+    private CurrentConditions currentConditions;
+    private HistoricalPeriodData past365Days;
+
+    @Setup
+    public void setUp() {
+        TimeSeriesData series = UsbrFixtures.elevationSeries(10);
+        currentConditions = new CurrentConditionsAggregator(30)
+                .aggregateCurrentConditions(new CollectorResponse<>(series, true, LocalDateTime.now()), UsbrFixtures.lake());
+        past365Days = new HistoricalDataAggregator().past365days(series, UsbrFixtures.TODAY);
+    }
+
+    @Benchmark
+    public Map<String, Object> serializeCurrentConditions() {
+        return serializer.serializeToMap(currentConditions);
+    }
+
+    @Benchmark
+    public Map<String, Object> serializePast365Days() {
+        return serializer.serializeToMap(past365Days);
+    }
+
+    @Benchmark
+    public Map<String, Object> serializePackedPast365Days() {
+        return serializer.serializeToPackedMap(past365Days);
+    }
+}
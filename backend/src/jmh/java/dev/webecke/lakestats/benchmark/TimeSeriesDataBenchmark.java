@@ -0,0 +1,67 @@
+package dev.webecke.lakestats.benchmark;
+
+import dev.webecke.lakestats.model.TimeSeriesData;
+import dev.webecke.lakestats.model.measurements.DataType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Building a {@link TimeSeriesData}, from entries in date order (what the source sends), from shuffled entries
+ * (which has to sort), and straight from columns.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class TimeSeriesDataBenchmark {
+    @Param({"1", "10", "50"})
+    private int years;
+
+    private List<TimeSeriesData.TimeSeriesEntry> orderedEntries;
+    private List<TimeSeriesData.TimeSeriesEntry> shuffledEntries;
+    private int[] epochDays;
+    private float[] values;
+
+    @Setup
+    public void setUp() {
+        orderedEntries = UsbrFixtures.elevationEntries(years);
+        shuffledEntries = new ArrayList<>(orderedEntries);
+        Collections.shuffle(shuffledEntries, new Random(years));
+
+        epochDays = new int[orderedEntries.size()];
+        values = new float[orderedEntries.size()];
+        for (int i = 0; i < orderedEntries.size(); i++) {
+            epochDays[i] = Math.toIntExact(orderedEntries.get(i).date().toEpochDay());
+            values[i] = orderedEntries.get(i).value();
+        }
+    }
+
+    @Benchmark
+    public TimeSeriesData fromOrderedEntries() {
+        return new TimeSeriesData(UsbrFixtures.LAKE_ID, orderedEntries, DataType.ELEVATION);
+    }
+
+    @Benchmark
+    public TimeSeriesData fromShuffledEntries() {
+        return new TimeSeriesData(UsbrFixtures.LAKE_ID, shuffledEntries, DataType.ELEVATION);
+    }
+
+    /**
+     * The series takes over its columns, so they're copied first. That copy is part of the measurement.
+     */
+    @Benchmark
+    public TimeSeriesData fromColumns() {
+        return TimeSeriesData.fromColumns(UsbrFixtures.LAKE_ID, DataType.ELEVATION, epochDays.clone(), values.clone());
+    }
+}
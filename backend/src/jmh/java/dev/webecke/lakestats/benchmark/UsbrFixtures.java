@@ -0,0 +1,97 @@
+package dev.webecke.lakestats.benchmark;
+
+import dev.webecke.lakestats.model.TimeSeriesData;
+import dev.webecke.lakestats.model.geography.Lake;
+import dev.webecke.lakestats.model.measurements.DataType;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * USBR hydrodata responses for the benchmarks, in the same <code>{"columns": [...], "data": [...]}</code> shape
+ * the collector parses. <br/>
+ * A recorded response placed at <code>src/jmh/resources/fixtures/usbr-elevation-&lt;years&gt;y.json</code> is used
+ * as is. Otherwise one is generated: a daily elevation series ending on {@link #LAST_SOURCE_DATE}, with a seasonal
+ * swing, a slow trend and day to day noise, seeded and dated so every run benchmarks the same bytes.
+ */
+public final class UsbrFixtures {
+    public static final String LAKE_ID = "benchmark-lake";
+    /** The last date in the generated responses, as the source dates it */
+    public static final LocalDate LAST_SOURCE_DATE = LocalDate.of(2025, 6, 30);
+    /** The day the generated data is current as of, which is also its last stored date (a day after the source's) */
+    public static final LocalDate TODAY = LAST_SOURCE_DATE.plusDays(1);
+
+    private UsbrFixtures() {}
+
+    /**
+     * @return the raw response body for <code>years</code> years of daily elevation data
+     */
+    public static byte[] elevationResponse(int years) {
+        String resource = "/fixtures/usbr-elevation-%dy.json".formatted(years);
+        try (InputStream recorded = UsbrFixtures.class.getResourceAsStream(resource)) {
+            if (recorded != null) {
+                return recorded.readAllBytes();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read fixture " + resource, e);
+        }
+        return generateElevationResponse(years);
+    }
+
+    /**
+     * @return the same data as {@link #elevationResponse(int)} as entries, dated the way the collector stores them
+     *         (a day after the source date), in the source's order
+     */
+    public static List<TimeSeriesData.TimeSeriesEntry> elevationEntries(int years) {
+        LocalDate date = LAST_SOURCE_DATE.minusYears(years);
+        Random random = new Random(years);
+        List<TimeSeriesData.TimeSeriesEntry> entries = new ArrayList<>();
+        float level = 3550f;
+        for (int day = 0; !date.isAfter(LAST_SOURCE_DATE); day++, date = date.plusDays(1)) {
+            level += (float) (0.08 * Math.sin(2 * Math.PI * day / 365.25) - 0.002 + 0.05 * random.nextGaussian());
+            entries.add(new TimeSeriesData.TimeSeriesEntry(Math.round(level * 100) / 100f, date.plusDays(1)));
+        }
+        return entries;
+    }
+
+    public static TimeSeriesData elevationSeries(int years) {
+        return new TimeSeriesData(LAKE_ID, elevationEntries(years), DataType.ELEVATION);
+    }
+
+    public static Lake lake() {
+        return new Lake(
+                LAKE_ID,
+                "Benchmark Lake",
+                "Synthetic lake for benchmarks",
+                LocalDate.of(1963, 3, 13),
+                "",
+                3700,
+                3490,
+                3370,
+                Map.of(DataType.ELEVATION, "https://www.usbr.gov/uc/water/hydrodata/reservoir_data/919/json/49.json"),
+                Map.of()
+        );
+    }
+
+    private static byte[] generateElevationResponse(int years) {
+        List<TimeSeriesData.TimeSeriesEntry> entries = elevationEntries(years);
+        StringBuilder json = new StringBuilder(entries.size() * 28 + 64);
+        json.append("{\"columns\": [\"datetime\", \"elevation\"], \"data\": [");
+        for (int i = 0; i < entries.size(); i++) {
+            TimeSeriesData.TimeSeriesEntry entry = entries.get(i);
+            if (i > 0) { json.append(", "); }
+            json.append("[\"").append(entry.date().minusDays(1)).append("\", ")
+                    .append(String.format(Locale.ROOT, "%.2f", entry.value())).append(']');
+        }
+        json.append("]}");
+        return json.toString().getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,64 @@
+package dev.webecke.lakestats.benchmark;
+
+import dev.webecke.lakestats.collector.BureauOfReclamationDataCollector;
+import dev.webecke.lakestats.collector.UsbrJsonStreamParser;
+import dev.webecke.lakestats.dao.local.MappedTimeSeriesStore;
+import dev.webecke.lakestats.model.TimeSeriesData;
+import dev.webecke.lakestats.model.measurements.DataType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing a USBR response the way {@link BureauOfReclamationDataCollector} does: the body is fed to the
+ * {@link UsbrJsonStreamParser} in network sized chunks, then finished with the collector's own parse step and turned
+ * into a series. The network and the {@link dev.webecke.lakestats.dao.local.MappedTimeSeriesStore} merge are left out.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class UsbrParsingBenchmark {
+    // Roughly what Reactor Netty hands over per DataBuffer
+    private static final int CHUNK_SIZE = 8192;
+
+    @Param({"1", "10", "50"})
+    private int years;
+
+    private byte[] response;
+
+    @Setup
+    public void setUp() {
+        response = UsbrFixtures.elevationResponse(years);
+    }
+
+    @Benchmark
+    public TimeSeriesData parseFullResponse() {
+        return parse(BureauOfReclamationDataCollector.firstSourceDayToKeep(MappedTimeSeriesStore.EMPTY));
+    }
+
+    /**
+     * A run after the first, with the store up to date as of yesterday, so only the revision window is kept
+     */
+    @Benchmark
+    public TimeSeriesData parseIncremental() {
+        int lastStoredDay = Math.toIntExact(UsbrFixtures.TODAY.minusDays(1).toEpochDay());
+        return parse(BureauOfReclamationDataCollector.firstSourceDayToKeep(lastStoredDay));
+    }
+
+    private TimeSeriesData parse(int firstEpochDayToKeep) {
+        UsbrJsonStreamParser parser = new UsbrJsonStreamParser(firstEpochDayToKeep);
+        for (int offset = 0; offset < response.length; offset += CHUNK_SIZE) {
+            parser.feed(ByteBuffer.wrap(response, offset, Math.min(CHUNK_SIZE, response.length - offset)));
+        }
+        int[] epochDays = BureauOfReclamationDataCollector.finishParsing(parser);
+        return TimeSeriesData.fromColumns(UsbrFixtures.LAKE_ID, DataType.ELEVATION, epochDays, parser.values());
+    }
+}
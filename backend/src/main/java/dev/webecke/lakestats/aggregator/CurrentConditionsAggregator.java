@@ -3,19 +3,31 @@ package dev.webecke.lakestats.aggregator;
 import dev.webecke.lakestats.model.CollectorResponse;
 import dev.webecke.lakestats.model.features.CurrentConditions;
 import dev.webecke.lakestats.model.TimeSeriesData;
+import dev.webecke.lakestats.model.TimeSeriesRangeIndex;
 import dev.webecke.lakestats.model.geography.Lake;
 import dev.webecke.lakestats.model.measurements.DataType;
 import dev.webecke.lakestats.service.LakeStatsLogger;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.time.LocalDate;
-import java.util.Map;
 
 @Service
 public class CurrentConditionsAggregator {
+    private static final int TEN_YEARS = 10;
+    private static final int WEEK_DAYS = 7;
+    private static final int MONTH_DAYS = 30;
+
     private final LakeStatsLogger logger = new LakeStatsLogger(CurrentConditionsAggregator.class);
+    private final int normalYears;
 
-    public CurrentConditionsAggregator() {}
+    public CurrentConditionsAggregator(@Value("${app.climatology.normal-years:30}") int normalYears) {
+        // The ten year average is taken from the same climatology as the normals, so their span has to cover it
+        if (normalYears < TEN_YEARS) {
+            throw new IllegalArgumentException("app.climatology.normal-years must be at least %d, got %d".formatted(TEN_YEARS, normalYears));
+        }
+        this.normalYears = normalYears;
+    }
 
     public CurrentConditions aggregateCurrentConditions(CollectorResponse<TimeSeriesData> collectorResponse, Lake lake) {
         if (!collectorResponse.successful()) { return null; }
@@ -28,38 +40,54 @@ public class CurrentConditionsAggregator {
 
         TimeSeriesData dataset = collectorResponse.data();
 
-        TimeSeriesData.TimeSeriesEntry today = dataset.chronologicalData().getFirst();
+        TimeSeriesData.TimeSeriesEntry today = dataset.latest();
         LocalDate todayDate = today.date();
 
+        // Both spans end with last year, so today's own value never counts towards its normals
+        int lastFullYear = todayDate.getYear() - 1;
+        DayOfYearClimatology normals = DayOfYearClimatology.build(dataset, lastFullYear - normalYears + 1, lastFullYear);
+        DayOfYearClimatology.DayStats normal = normals.statsOn(todayDate);
+        // Both windows end today, so the range index answers each one without walking the series
+        TimeSeriesRangeIndex.RangeStats pastWeek = dataset.rangeIndex().stats(todayDate.minusDays(WEEK_DAYS), todayDate);
+        TimeSeriesRangeIndex.RangeStats pastMonth = dataset.rangeIndex().stats(todayDate.minusDays(MONTH_DAYS), todayDate);
+
         return new CurrentConditions(
                 dataset.lakeId(),
                 collectorResponse.collectedAt(),
                 todayDate,
                 today.value(),
-                dataset.dateIndex().get(todayDate.minusDays(1)).value(),
-                dataset.dateIndex().get(todayDate.minusWeeks(2)).value(),
-                dataset.dateIndex().get(todayDate.minusYears(1)).value(),
-                multiYearAverageOnThisDate(todayDate, 10, dataset)
+                dataset.entryOn(todayDate.minusDays(1)).value(),
+                dataset.entryOn(todayDate.minusWeeks(2)).value(),
+                dataset.entryOn(todayDate.minusYears(1)).value(),
+                tenYearAverageOnThisDate(todayDate, normals, dataset.lakeId()),
+                normals.firstYear(),
+                normals.lastYear(),
+                normal == null ? null : normal.mean(),
+                normal == null ? null : normal.p10(),
+                normal == null ? null : normal.p50(),
+                normal == null ? null : normal.p90(),
+                normal == null ? null : normal.recordHigh(),
+                normal == null ? null : normal.recordLow(),
+                normal == null ? null : normals.percentileRank(todayDate, today.value()),
+                pastWeek.netChange(),
+                pastMonth.netChange(),
+                pastMonth.min(),
+                pastMonth.max()
         );
     }
 
-    private float multiYearAverageOnThisDate(LocalDate startDate, Integer years, TimeSeriesData dataset) {
-        Map<LocalDate, TimeSeriesData.TimeSeriesEntry> indexedData = dataset.dateIndex();
+    /**
+     * Average level on this day of the year over the previous ten years. Averages over the years that have data
+     * if some are missing. February 29th only exists in leap years, so it is only missing data if one of those is.
+     */
+    private float tenYearAverageOnThisDate(LocalDate date, DayOfYearClimatology normals, String lakeId) {
+        DayOfYearClimatology.RangeMean mean = normals.meanOn(date, date.getYear() - TEN_YEARS, date.getYear() - 1);
 
-        float runningSum = 0;
-        for (int i = 0; i < years; i++) {
-            TimeSeriesData.TimeSeriesEntry entry = indexedData.get(startDate.minusYears(i + 1));
-
-            if (entry == null) {
-                logger.warn(
-                        "Less than %d years of data found for %s while calculating multiYearAverageOnThisDate"
-                                .formatted(years, dataset.lakeId()), dataset.lakeId());
-                break;
-            }
-
-            runningSum += entry.value();
+        if (mean.years() < mean.possibleYears()) {
+            logger.warnForLake(() ->
+                    "Only %d of %d years of data found for %s while calculating the ten year average"
+                            .formatted(mean.years(), mean.possibleYears(), lakeId), lakeId);
         }
-
-        return runningSum / years;
+        return mean.years() == 0 ? 0 : mean.mean();
     }
 }
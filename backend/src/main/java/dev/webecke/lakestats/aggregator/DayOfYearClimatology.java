@@ -0,0 +1,252 @@
+package dev.webecke.lakestats.aggregator;
+
+import dev.webecke.lakestats.model.TimeSeriesData;
+
+import java.time.LocalDate;
+import java.time.Year;
+import java.util.Arrays;
+
+/**
+ * Long-term statistics for every day of the year, built in a single pass over a span of years of a series. <br/>
+ * Days are keyed by month and day rather than by day-of-year number, so March 1st lines up with March 1st in both
+ * leap and common years. February 29th gets its own slot, fed only by leap years, and falls back to February 28th
+ * when the span has no leap year data. <br/>
+ * Every lookup is O(1), apart from {@link #percentileRank} which is a binary search over at most one value per year,
+ * and {@link #meanOn} which goes over at most one value per year.
+ */
+public final class DayOfYearClimatology {
+    private static final int SLOTS = 366;
+    private static final int FEBRUARY_29_SLOT = 59;
+    // Slot of the first day of each month, laid out as a leap year
+    private static final int[] MONTH_START_SLOT = {0, 31, 60, 91, 121, 152, 182, 213, 244, 274, 305, 335};
+
+    private final int firstYear;
+    private final int lastYear;
+    // One sorted array of values per slot, at most one value per year
+    private final float[][] sortedValues;
+    private final float[] means;
+    // The same values in date order, with the year each one is from, for means over part of the span
+    private final float[][] valuesByYear;
+    private final int[][] years;
+
+    /**
+     * Statistics for one day of the year across the span
+     * @param years number of years with data for this day
+     */
+    public record DayStats(
+            int years,
+            float mean,
+            float p10,
+            float p50,
+            float p90,
+            float recordHigh,
+            float recordLow
+    ) {}
+
+    /**
+     * Mean of one day of the year over part of the span
+     * @param years number of years in the range with data for this day
+     * @param possibleYears number of years in the range that have this day at all. Only leap years have
+     *                      February 29th, so it's less than the length of the range for that day.
+     * @param mean NaN if no year in the range has data for the day
+     */
+    public record RangeMean(
+            int years,
+            int possibleYears,
+            float mean
+    ) {}
+
+    private DayOfYearClimatology(int firstYear, int lastYear, float[][] sortedValues, float[] means,
+                                 float[][] valuesByYear, int[][] years) {
+        this.firstYear = firstYear;
+        this.lastYear = lastYear;
+        this.sortedValues = sortedValues;
+        this.means = means;
+        this.valuesByYear = valuesByYear;
+        this.years = years;
+    }
+
+    /**
+     * Builds the climatology from the entries of <code>series</code> dated in the years <code>firstYear</code>
+     * to <code>lastYear</code> (both inclusive). Only that part of the series is read.
+     */
+    public static DayOfYearClimatology build(TimeSeriesData series, int firstYear, int lastYear) {
+        if (firstYear > lastYear) {
+            throw new IllegalArgumentException("Invalid year span %d to %d".formatted(firstYear, lastYear));
+        }
+
+        int start = series.lowerBound(Math.toIntExact(LocalDate.of(firstYear, 1, 1).toEpochDay()));
+        int end = series.lowerBound(Math.toIntExact(LocalDate.of(lastYear + 1, 1, 1).toEpochDay()));
+
+        // First pass counts, so each slot's array can be sized exactly
+        int[] counts = new int[SLOTS];
+        for (int i = start; i < end; i++) {
+            counts[slotOfEpochDay(series.epochDayAt(i))]++;
+        }
+
+        float[][] values = new float[SLOTS][];
+        int[][] years = new int[SLOTS][];
+        for (int slot = 0; slot < SLOTS; slot++) {
+            values[slot] = new float[counts[slot]];
+            years[slot] = new int[counts[slot]];
+        }
+        Arrays.fill(counts, 0);
+
+        float[] means = new float[SLOTS];
+        double[] sums = new double[SLOTS];
+        int year = firstYear;
+        int nextYearEpochDay = Math.toIntExact(LocalDate.of(year + 1, 1, 1).toEpochDay());
+        for (int i = start; i < end; i++) {
+            int epochDay = series.epochDayAt(i);
+            while (epochDay >= nextYearEpochDay) {
+                year++;
+                nextYearEpochDay = Math.toIntExact(LocalDate.of(year + 1, 1, 1).toEpochDay());
+            }
+            int slot = slotOfEpochDay(epochDay);
+            float value = series.valueAt(i);
+            years[slot][counts[slot]] = year;
+            values[slot][counts[slot]++] = value;
+            sums[slot] += value;
+        }
+
+        float[][] sorted = new float[SLOTS][];
+        for (int slot = 0; slot < SLOTS; slot++) {
+            sorted[slot] = values[slot].clone();
+            Arrays.sort(sorted[slot]);
+            means[slot] = counts[slot] == 0 ? Float.NaN : (float) (sums[slot] / counts[slot]);
+        }
+
+        return new DayOfYearClimatology(firstYear, lastYear, sorted, means, values, years);
+    }
+
+    public int firstYear() {
+        return firstYear;
+    }
+
+    public int lastYear() {
+        return lastYear;
+    }
+
+    /**
+     * @return the statistics for the date's day of the year, or null if no year in the span has data for it
+     */
+    public DayStats statsOn(LocalDate date) {
+        int slot = slotWithData(date);
+        if (slot < 0) { return null; }
+
+        float[] values = sortedValues[slot];
+        return new DayStats(
+                values.length,
+                means[slot],
+                percentile(values, 0.10),
+                percentile(values, 0.50),
+                percentile(values, 0.90),
+                values[values.length - 1],
+                values[0]
+        );
+    }
+
+    /**
+     * Mean for the date's day of the year over the years <code>fromYear</code> to <code>toYear</code> (both
+     * inclusive), so a shorter average can share the climatology built for the normals. The range is clipped to the
+     * span. As with the whole span, February 29th falls back to February 28th when no leap year in the range has data.
+     */
+    public RangeMean meanOn(LocalDate date, int fromYear, int toYear) {
+        int from = Math.max(fromYear, firstYear);
+        int to = Math.min(toYear, lastYear);
+        int slot = slotOf(date.getMonthValue(), date.getDayOfMonth());
+
+        RangeMean mean = meanOf(slot, from, to);
+        if (slot == FEBRUARY_29_SLOT && mean.years() == 0) {
+            mean = meanOf(slot - 1, from, to);
+        }
+        return mean;
+    }
+
+    /**
+     * @return the percentage (0 to 100) of years in the span whose value on this day of the year was below
+     *         <code>value</code>, counting ties as half. NaN if no year in the span has data for the day.
+     */
+    public float percentileRank(LocalDate date, float value) {
+        int slot = slotWithData(date);
+        if (slot < 0) { return Float.NaN; }
+
+        float[] values = sortedValues[slot];
+        int below = firstIndexNotBelow(values, value);
+        int notAbove = firstIndexAbove(values, value);
+        return 100f * (below + (notAbove - below) / 2f) / values.length;
+    }
+
+    private RangeMean meanOf(int slot, int from, int to) {
+        int possibleYears = 0;
+        for (int year = from; year <= to; year++) {
+            if (slot != FEBRUARY_29_SLOT || Year.isLeap(year)) { possibleYears++; }
+        }
+
+        int count = 0;
+        double sum = 0;
+        int[] slotYears = years[slot];
+        for (int i = 0; i < slotYears.length; i++) {
+            if (slotYears[i] >= from && slotYears[i] <= to) {
+                sum += valuesByYear[slot][i];
+                count++;
+            }
+        }
+        return new RangeMean(count, possibleYears, count == 0 ? Float.NaN : (float) (sum / count));
+    }
+
+    private int slotWithData(LocalDate date) {
+        int slot = slotOf(date.getMonthValue(), date.getDayOfMonth());
+        if (slot == FEBRUARY_29_SLOT && sortedValues[slot].length == 0) {
+            slot--; // No leap year data in the span, February 28th is the closest stand-in
+        }
+        return sortedValues[slot].length == 0 ? -1 : slot;
+    }
+
+    /**
+     * Linear interpolation between the closest ranks
+     */
+    private static float percentile(float[] sorted, double fraction) {
+        double position = fraction * (sorted.length - 1);
+        int lower = (int) Math.floor(position);
+        int upper = Math.min(lower + 1, sorted.length - 1);
+        return (float) (sorted[lower] + (sorted[upper] - sorted[lower]) * (position - lower));
+    }
+
+    private static int firstIndexNotBelow(float[] sorted, float value) {
+        int low = 0, high = sorted.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (sorted[middle] < value) low = middle + 1; else high = middle;
+        }
+        return low;
+    }
+
+    private static int firstIndexAbove(float[] sorted, float value) {
+        int low = 0, high = sorted.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (sorted[middle] <= value) low = middle + 1; else high = middle;
+        }
+        return low;
+    }
+
+    private static int slotOf(int month, int day) {
+        return MONTH_START_SLOT[month - 1] + day - 1;
+    }
+
+    /**
+     * Month and day of an epoch-day without creating a LocalDate (Hinnant's civil_from_days)
+     */
+    static int slotOfEpochDay(int epochDay) {
+        int z = epochDay + 719468;
+        int era = Math.floorDiv(z, 146097);
+        int dayOfEra = z - era * 146097;
+        int yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+        int dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        int shiftedMonth = (5 * dayOfYear + 2) / 153; // March = 0
+        int day = dayOfYear - (153 * shiftedMonth + 2) / 5 + 1;
+        int month = shiftedMonth < 10 ? shiftedMonth + 3 : shiftedMonth - 9;
+        return slotOf(month, day);
+    }
+}
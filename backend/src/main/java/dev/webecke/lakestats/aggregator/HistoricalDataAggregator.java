@@ -5,35 +5,66 @@ import dev.webecke.lakestats.model.TimeSeriesData;
 import dev.webecke.lakestats.service.LakeStatsLogger;
 import org.springframework.stereotype.Service;
 
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.HexFormat;
 import java.util.List;
+import java.util.Map;
 
 @Service
 public class HistoricalDataAggregator {
     private final LakeStatsLogger logger = new LakeStatsLogger(HistoricalDataAggregator.class);
 
+    /**
+     * One calendar year of a dataset, the entries from <code>fromIndex</code> to <code>toIndex</code> (exclusive)
+     * @param contentHash SHA-256 of the year's dates and values, changes whenever any entry in the year does
+     */
+    public record CalendarYearArchive(
+            int year,
+            String contentHash,
+            TimeSeriesData dataset,
+            int fromIndex,
+            int toIndex
+    ) {
+        /**
+         * Builds the year's period data. Only done on demand, since unchanged years never need it.
+         */
+        public HistoricalPeriodData periodData() {
+            return HistoricalPeriodData.create(
+                    dataset.lakeId(),
+                    HistoricalPeriodData.PeriodType.CALENDAR_YEAR,
+                    dataset.type(),
+                    dataset.entries(fromIndex, toIndex)
+            );
+        }
+    }
+
     public HistoricalPeriodData past365days(TimeSeriesData dataset) {
-        List<TimeSeriesData.TimeSeriesEntry> resultData = new ArrayList<>();
-        List<TimeSeriesData.TimeSeriesEntry> chronologicalData = dataset.chronologicalData();
+        return past365days(dataset, LocalDate.now());
+    }
+
+    /**
+     * Same as {@link #past365days(TimeSeriesData)}, for a dataset that ends on a given day rather than today
+     */
+    public HistoricalPeriodData past365days(TimeSeriesData dataset, LocalDate today) {
+        int size = dataset.size();
 
-        if (chronologicalData.size() < 365) {
-            logger.warn("Less than 365 days of %s data found for %s while calculating aggregating past 365 days".formatted(dataset.type() ,dataset.lakeId()), dataset.lakeId());
+        if (size < 365) {
+            logger.warnForLake(() -> "Less than 365 days of %s data found for %s while calculating aggregating past 365 days".formatted(dataset.type() ,dataset.lakeId()), dataset.lakeId());
             return null;
         }
 
-        LocalDate oneYearAgo = LocalDate.now().minusYears(1);
-        for (int i = 0; i < 365; i++) {
-            TimeSeriesData.TimeSeriesEntry entry = chronologicalData.get(i);
-
-            // If we somehow have more than 365 days of data, or there were holes in the data
-            // resulting in reaching past a year within 365 datapoints, break the loop and be done
-            if (entry.date().isBefore(oneYearAgo)) {
-                break;
-            }
-
-            resultData.add(entry);
+        // Take the newest 365 entries. If there were holes in the data resulting in reaching
+        // past a year within 365 datapoints, drop the ones that are more than a year old
+        long oneYearAgo = today.minusYears(1).toEpochDay();
+        int start = size - 365;
+        while (start < size && dataset.epochDayAt(start) < oneYearAgo) {
+            start++;
         }
+        List<TimeSeriesData.TimeSeriesEntry> resultData = dataset.entries(start, size);
 
         return HistoricalPeriodData.create(
                 dataset.lakeId(),
@@ -42,4 +73,61 @@ public class HistoricalDataAggregator {
                 resultData
         );
     }
+
+    /**
+     * Splits the whole dataset into one period per calendar year, hashing each year as it goes, in a single pass.
+     * @return the years in ascending order, only years with data are included
+     */
+    public List<CalendarYearArchive> calendarYears(TimeSeriesData dataset) {
+        List<CalendarYearArchive> years = new ArrayList<>();
+        MessageDigest digest = sha256();
+        ByteBuffer entryBytes = ByteBuffer.allocate(Integer.BYTES + Float.BYTES);
+
+        int yearStart = 0;
+        while (yearStart < dataset.size()) {
+            int year = dataset.dateAt(yearStart).getYear();
+            int nextYearEpochDay = Math.toIntExact(LocalDate.of(year + 1, 1, 1).toEpochDay());
+
+            int yearEnd = yearStart;
+            digest.update(dataset.type().name().getBytes());
+            while (yearEnd < dataset.size() && dataset.epochDayAt(yearEnd) < nextYearEpochDay) {
+                entryBytes.clear();
+                entryBytes.putInt(dataset.epochDayAt(yearEnd)).putFloat(dataset.valueAt(yearEnd));
+                digest.update(entryBytes.array());
+                yearEnd++;
+            }
+
+            years.add(new CalendarYearArchive(
+                    year,
+                    HexFormat.of().formatHex(digest.digest()), // digest() also resets it for the next year
+                    dataset,
+                    yearStart,
+                    yearEnd
+            ));
+            yearStart = yearEnd;
+        }
+        return years;
+    }
+
+    /**
+     * @param publishedHashes the content hash of each year that has been published, keyed by year
+     * @return the years that were never published, or whose content changed since they were
+     */
+    public static List<CalendarYearArchive> changedYears(List<CalendarYearArchive> years, Map<String, String> publishedHashes) {
+        List<CalendarYearArchive> changed = new ArrayList<>();
+        for (CalendarYearArchive year : years) {
+            if (!year.contentHash().equals(publishedHashes.get(String.valueOf(year.year())))) {
+                changed.add(year);
+            }
+        }
+        return changed;
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
 }
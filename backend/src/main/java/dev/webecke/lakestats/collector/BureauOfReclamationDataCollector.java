@@ -1,7 +1,8 @@
 package dev.webecke.lakestats.collector;
 
-import com.fasterxml.jackson.databind.JsonNode;
+import dev.webecke.lakestats.dao.local.MappedTimeSeriesStore;
 import dev.webecke.lakestats.model.CollectorResponse;
+import dev.webecke.lakestats.model.LakeDataBundle;
 import dev.webecke.lakestats.model.LakeStatsException;
 import dev.webecke.lakestats.model.ResultStatus;
 import dev.webecke.lakestats.model.TimeSeriesData;
@@ -9,24 +10,89 @@ import dev.webecke.lakestats.model.geography.Lake;
 import dev.webecke.lakestats.model.measurements.DataType;
 import dev.webecke.lakestats.network.NetworkClient;
 import dev.webecke.lakestats.network.NetworkException;
+import dev.webecke.lakestats.network.ResponseCache;
+import dev.webecke.lakestats.service.CollectionMetrics;
 import dev.webecke.lakestats.service.LakeStatsLogger;
+import dev.webecke.lakestats.utils.StageProfiler;
+import io.perfmark.Link;
+import io.perfmark.PerfMark;
+import io.perfmark.TaskCloseable;
+import org.springframework.core.io.buffer.DataBuffer;
 import org.springframework.stereotype.Service;
 
-import java.time.LocalDate;
+import java.io.UncheckedIOException;
+import java.time.DateTimeException;
 import java.time.LocalDateTime;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
 
 @Service
 public class BureauOfReclamationDataCollector {
+    /**
+     * How far back before the last stored day to re-read the source, so upstream revisions to recent days are merged
+     */
+    private static final int REVISION_WINDOW_DAYS = 14;
+
     private final NetworkClient networkClient;
+    private final MappedTimeSeriesStore seriesStore;
+    private final CollectionMetrics metrics;
     private final LakeStatsLogger logger = new LakeStatsLogger(BureauOfReclamationDataCollector.class);
 
-    public BureauOfReclamationDataCollector(NetworkClient networkClient) {
+    public BureauOfReclamationDataCollector(NetworkClient networkClient, MappedTimeSeriesStore seriesStore,
+                                            CollectionMetrics metrics) {
         this.networkClient = networkClient;
+        this.seriesStore = seriesStore;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Where the time went while a response was streamed. The body is parsed as it arrives, so the time spent in the
+     * parser is tracked separately and taken out of the fetch time. Only touched by one thread at a time.
+     */
+    private static final class FetchStats {
+        private final long startNanos = System.nanoTime();
+        private long parseNanos = 0;
+        private long bytes = 0;
+
+        private long fetchNanos() {
+            return System.nanoTime() - startNanos - parseNanos;
+        }
+
+        private void recordFetch(StageProfiler profiler, long fetchNanos) {
+            profiler.record(StageProfiler.Stage.FETCH, fetchNanos);
+            profiler.addBytesDownloaded(bytes);
+        }
     }
 
+    /**
+     * Fetches the lake's data for the given type and merges any new days into the {@link MappedTimeSeriesStore}.
+     * Only rows from shortly before the last stored day onwards are kept while parsing, so after the first run the
+     * cost is proportional to the number of new days rather than the length of the whole history.
+     * @return the full stored series, including the newly merged days
+     */
     public CollectorResponse<TimeSeriesData> collectData(Lake lake, DataType type) {
+        return collectData(lake, type, new StageProfiler());
+    }
+
+    /**
+     * Same as {@link #collectData(Lake, DataType)}, also recording the fetch and parse stages in <code>profiler</code>
+     */
+    public CollectorResponse<TimeSeriesData> collectData(Lake lake, DataType type, StageProfiler profiler) {
+        try (TaskCloseable task = PerfMark.traceTask("BureauOfReclamationDataCollector.collectData")) {
+            PerfMark.attachTag("lake", lake.id());
+            PerfMark.attachTag("dataType", type.name());
+            return fetchAndMerge(lake, type, profiler);
+        }
+    }
+
+    private CollectorResponse<TimeSeriesData> fetchAndMerge(Lake lake, DataType type, StageProfiler profiler) {
         String dataSourceUrl;
         try {
             dataSourceUrl = lake.getDataSourceUrl(type);
@@ -34,26 +100,159 @@ public class BureauOfReclamationDataCollector {
             throw new IllegalArgumentException("No URL found for data type: " + type + " while collecting data");
         }
 
+        ResponseCache.Entry cacheEntry = null;
         try {
-            JsonNode response = networkClient.getRequest(dataSourceUrl);
+            int lastStoredDay = seriesStore.lastEpochDay(lake.id(), type);
+            UsbrJsonStreamParser parser = new UsbrJsonStreamParser(firstSourceDayToKeep(lastStoredDay));
+            FetchStats stats = new FetchStats();
+            // Body chunks may be handed over on a network thread, the link ties them back to this fetch
+            Link fetchLink = PerfMark.linkOut();
+            Consumer<DataBuffer> feedParser = buffer -> {
+                long parseStart = System.nanoTime();
+                stats.bytes += buffer.readableByteCount();
+                try (TaskCloseable task = PerfMark.traceTask("UsbrJsonStreamParser.feed");
+                     DataBuffer.ByteBufferIterator chunks = buffer.readableByteBuffers()) {
+                    PerfMark.linkIn(fetchLink);
+                    while (chunks.hasNext()) {
+                        parser.feed(chunks.next());
+                    }
+                }
+                stats.parseNanos += System.nanoTime() - parseStart;
+            };
 
-            JsonNode dataArray = response.get("data");
-            List<TimeSeriesData.TimeSeriesEntry> entries = new ArrayList<>();
+            String fetchOutcome = "modified";
+            PerfMark.startTask("fetch");
+            try {
+                cacheEntry = networkClient.streamRequestIfModified(dataSourceUrl, feedParser);
+                if (cacheEntry == null) {
+                    if (lastStoredDay != MappedTimeSeriesStore.EMPTY) {
+                        long fetchNanos = stats.fetchNanos();
+                        metrics.recordFetch(lake.id(), type, "not_modified", fetchNanos, stats.bytes);
+                        stats.recordFetch(profiler, fetchNanos);
+                        logger.infoForLake(() -> "%s data for %s has not changed since the last fetch".formatted(type, lake.id()), lake.id());
+                        return new CollectorResponse<>(seriesStore.read(lake.id(), type), true, LocalDateTime.now());
+                    }
+                    // Nothing has been stored for this series yet, so fall back to the body cached on disk
+                    fetchOutcome = "cached";
+                    networkClient.streamCachedResponse(dataSourceUrl, feedParser);
+                }
+            } catch (NetworkException e) {
+                metrics.recordFetch(lake.id(), type, "error", stats.fetchNanos(), stats.bytes);
+                throw e;
+            } finally {
+                PerfMark.stopTask("fetch");
+            }
+            long fetchNanos = stats.fetchNanos();
+            metrics.recordFetch(lake.id(), type, fetchOutcome, fetchNanos, stats.bytes);
+            stats.recordFetch(profiler, fetchNanos);
 
-            for (JsonNode entry : dataArray) {
-                LocalDate date = LocalDate.parse(entry.get(0).asText());
-                // We roll the date forward one day because its record at 11:59 PM, which is really the next day
-                LocalDate adjustedDate = date.plusDays(1);
-                float level = entry.get(1).floatValue();
-                entries.add(new TimeSeriesData.TimeSeriesEntry(level, adjustedDate));
+            long parseStart = System.nanoTime();
+            int[] epochDays;
+            try (TaskCloseable task = PerfMark.traceTask("parse")) {
+                epochDays = finishParsing(parser);
             }
+            metrics.recordParse(lake.id(), type, stats.parseNanos + System.nanoTime() - parseStart);
 
-            TimeSeriesData data = new TimeSeriesData(lake.id(), entries, type);
+            TimeSeriesData data;
+            try (TaskCloseable task = PerfMark.traceTask("MappedTimeSeriesStore.merge")) {
+                seriesStore.merge(lake.id(), type, epochDays, parser.values());
+                data = seriesStore.read(lake.id(), type);
+            }
+            // Turning the rows into the stored series is counted as part of parsing
+            profiler.record(StageProfiler.Stage.PARSE, stats.parseNanos + System.nanoTime() - parseStart);
+            if (data == null) {
+                throw new LakeStatsException("No %s data received for %s".formatted(type, lake.id()), ResultStatus.SYSTEM_EXCEPTION);
+            }
+            // Only now that the body parsed and merged is it worth keeping. If it were cached before, a truncated
+            // response would get 304s from then on and the lake would look like it had stopped updating.
+            if (cacheEntry != null) { cacheEntry.commit(); }
 
             return new CollectorResponse<>(data, true, LocalDateTime.now());
 
         } catch (NetworkException e) {
             throw new LakeStatsException("Network exception while collecting %s data for %s".formatted(type, lake.id()), ResultStatus.SYSTEM_EXCEPTION, e);
+        } catch (UncheckedIOException | DateTimeException e) {
+            throw new LakeStatsException("Malformed %s data received for %s".formatted(type, lake.id()), ResultStatus.SYSTEM_EXCEPTION, e);
+        } finally {
+            // Does nothing once committed
+            if (cacheEntry != null) { cacheEntry.abort(); }
         }
     }
+
+    /**
+     * @param lastStoredDay the last day in the store, or {@link MappedTimeSeriesStore#EMPTY}
+     * @return the first source day worth parsing: everything for an empty store, otherwise the revision window
+     *         before the last stored day
+     */
+    public static int firstSourceDayToKeep(int lastStoredDay) {
+        // Source dates are a day behind ours (see finishParsing), hence the extra day
+        return lastStoredDay == MappedTimeSeriesStore.EMPTY
+                ? Integer.MIN_VALUE
+                : lastStoredDay - REVISION_WINDOW_DAYS - 1;
+    }
+
+    /**
+     * The parse step once the whole body has been fed to the parser: ends its input and turns the source dates of
+     * the rows it kept into the days they are stored under. Shared with the parsing benchmark, so it measures what
+     * the collector does.
+     * @return the stored days, parallel to the parser's values
+     */
+    public static int[] finishParsing(UsbrJsonStreamParser parser) {
+        parser.endOfInput();
+
+        int[] epochDays = parser.epochDays();
+        for (int i = 0; i < epochDays.length; i++) {
+            // We roll the date forward one day because its record at 11:59 PM, which is really the next day
+            epochDays[i]++;
+        }
+        return epochDays;
+    }
+
+    /**
+     * Collects every data type the lake has a source for at the same time. Each type is fetched on its own virtual
+     * thread over the {@link NetworkClient}'s shared connection pool, so the lake takes about as long as its slowest
+     * source rather than the sum of all of them. <br/>
+     * A type that fails doesn't stop the others, its error is kept in the bundle instead.
+     */
+    public LakeDataBundle collectAllData(Lake lake) {
+        return collectAllData(lake, new StageProfiler());
+    }
+
+    /**
+     * Same as {@link #collectAllData(Lake)}, also recording every type's fetch and parse stages in <code>profiler</code>
+     */
+    public LakeDataBundle collectAllData(Lake lake, StageProfiler profiler) {
+        Set<DataType> types = EnumSet.noneOf(DataType.class);
+        if (lake.dataSources() != null) { types.addAll(lake.dataSources().keySet()); }
+
+        Map<DataType, Future<CollectorResponse<TimeSeriesData>>> pendingResponses = new EnumMap<>(DataType.class);
+        Link link = PerfMark.linkOut();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (DataType type : types) {
+                pendingResponses.put(type, executor.submit(() -> {
+                    try (TaskCloseable task = PerfMark.traceTask("collectAllData.type")) {
+                        PerfMark.linkIn(link);
+                        return collectData(lake, type, profiler);
+                    }
+                }));
+            }
+        } // close() waits for every type to finish
+
+        Map<DataType, TimeSeriesData> series = new EnumMap<>(DataType.class);
+        Map<DataType, LakeStatsException> failures = new EnumMap<>(DataType.class);
+        pendingResponses.forEach((type, pendingResponse) -> {
+            try {
+                series.put(type, pendingResponse.get().data());
+            } catch (InterruptedException | ExecutionException e) {
+                if (e instanceof InterruptedException) { Thread.currentThread().interrupt(); }
+                Throwable cause = e instanceof ExecutionException ? e.getCause() : e;
+                failures.put(type, cause instanceof LakeStatsException lakeStatsException
+                        ? lakeStatsException
+                        : new LakeStatsException("Unknown error while collecting %s data for %s".formatted(type, lake.id()),
+                                ResultStatus.SYSTEM_EXCEPTION, cause));
+            }
+        });
+
+        return new LakeDataBundle(lake.id(), series, failures, LocalDateTime.now());
+    }
 }
@@ -0,0 +1,212 @@
+package dev.webecke.lakestats.collector;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.async.ByteBufferFeeder;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.time.Month;
+import java.time.Year;
+import java.time.format.DateTimeParseException;
+import java.util.Arrays;
+
+/**
+ * Incremental parser for the JSON served by the Bureau of Reclamation's hydrodata endpoints, which looks like
+ * <code>{"columns": [...], "data": [["2024-01-01", 3550.12], ...]}</code>. <br/>
+ * Chunks of the response body are fed in as they arrive, so the document is never held in memory as a whole and no
+ * tree is built. Dates are parsed straight to epoch-days and values are collected into primitive arrays, so a row
+ * costs no allocations beyond the occasional array growth. <br/>
+ * Dates are reported exactly as they appear in the source; any adjustment is up to the caller. Rows dated before
+ * <code>firstEpochDayToKeep</code> are skipped without being stored, so an incremental fetch only pays for new days. <br/>
+ * Public only so the parsing benchmark can drive it the way {@link BureauOfReclamationDataCollector} does.
+ */
+public class UsbrJsonStreamParser {
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+    private static final String DATA_FIELD = "data";
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private final JsonParser parser;
+    private final ByteBufferFeeder feeder;
+    private final int firstEpochDayToKeep;
+
+    // Position in the document
+    private int depth = 0;
+    private boolean dataFieldNext = false;
+    private boolean inDataArray = false;
+
+    // Row currently being read
+    private int column;
+    private boolean rowHasDate;
+    private int rowEpochDay;
+    private float rowValue;
+
+    private int[] epochDays = new int[INITIAL_CAPACITY];
+    private float[] values = new float[INITIAL_CAPACITY];
+    private int size = 0;
+
+    UsbrJsonStreamParser() {
+        this(Integer.MIN_VALUE);
+    }
+
+    public UsbrJsonStreamParser(int firstEpochDayToKeep) {
+        this.firstEpochDayToKeep = firstEpochDayToKeep;
+        try {
+            this.parser = JSON_FACTORY.createNonBlockingByteBufferParser();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to create JSON parser", e);
+        }
+        this.feeder = (ByteBufferFeeder) parser.getNonBlockingInputFeeder();
+    }
+
+    /**
+     * Parses as much of the document as the chunk allows. The chunk is fully consumed before this returns, so the
+     * caller is free to release or reuse it afterwards.
+     */
+    public void feed(ByteBuffer chunk) {
+        try {
+            feeder.feedInput(chunk);
+            drain();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Malformed JSON in USBR response", e);
+        }
+    }
+
+    /**
+     * Signals that the whole body has been fed and parses whatever is left.
+     */
+    public void endOfInput() {
+        try {
+            feeder.endOfInput();
+            drain();
+            parser.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Malformed JSON in USBR response", e);
+        }
+        if (depth != 0) {
+            throw new UncheckedIOException(new IOException("USBR response ended before the JSON document was complete"));
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * @return the parsed dates as epoch-days, in the order they appeared in the document
+     */
+    public int[] epochDays() {
+        return Arrays.copyOf(epochDays, size);
+    }
+
+    /**
+     * @return the parsed values, parallel to {@link #epochDays()}
+     */
+    public float[] values() {
+        return Arrays.copyOf(values, size);
+    }
+
+    private void drain() throws IOException {
+        JsonToken token;
+        while ((token = parser.nextToken()) != null && token != JsonToken.NOT_AVAILABLE) {
+            switch (token) {
+                case FIELD_NAME -> dataFieldNext = depth == 1 && DATA_FIELD.equals(parser.currentName());
+                case START_OBJECT -> {
+                    depth++;
+                    dataFieldNext = false;
+                }
+                case START_ARRAY -> {
+                    depth++;
+                    if (dataFieldNext && depth == 2) {
+                        inDataArray = true;
+                    } else if (inDataArray && depth == 3) {
+                        column = 0;
+                        rowHasDate = false;
+                        rowValue = 0;
+                    }
+                    dataFieldNext = false;
+                }
+                case END_ARRAY -> {
+                    if (inDataArray && depth == 3 && rowHasDate && rowEpochDay >= firstEpochDayToKeep) {
+                        append(rowEpochDay, rowValue);
+                    } else if (inDataArray && depth == 2) {
+                        inDataArray = false;
+                    }
+                    depth--;
+                }
+                case END_OBJECT -> depth--;
+                default -> {
+                    dataFieldNext = false;
+                    if (inDataArray && depth == 3) {
+                        readRowValue(token);
+                    }
+                }
+            }
+        }
+    }
+
+    private void readRowValue(JsonToken token) throws IOException {
+        if (column == 0 && token == JsonToken.VALUE_STRING) {
+            rowEpochDay = parseIsoEpochDay(parser.getTextCharacters(), parser.getTextOffset(), parser.getTextLength());
+            rowHasDate = true;
+        } else if (column == 1 && token.isNumeric()) {
+            rowValue = parser.getFloatValue();
+        }
+        column++;
+    }
+
+    private void append(int epochDay, float value) {
+        if (size == epochDays.length) {
+            epochDays = Arrays.copyOf(epochDays, size * 2);
+            values = Arrays.copyOf(values, size * 2);
+        }
+        epochDays[size] = epochDay;
+        values[size] = value;
+        size++;
+    }
+
+    /**
+     * Parses the <code>yyyy-MM-dd</code> prefix of a date string without creating a String or a LocalDate.
+     * Anything after the date (such as a time of day) is ignored.
+     */
+    static int parseIsoEpochDay(char[] text, int offset, int length) {
+        if (length < 10 || text[offset + 4] != '-' || text[offset + 7] != '-') {
+            throw new DateTimeParseException("Expected a yyyy-MM-dd date", new String(text, offset, length), 0);
+        }
+        int year = parseDigits(text, offset, 4);
+        int month = parseDigits(text, offset + 5, 2);
+        int day = parseDigits(text, offset + 8, 2);
+
+        if (year < 0 || month < 1 || month > 12 || day < 1 || day > Month.of(month).length(Year.isLeap(year))) {
+            throw new DateTimeParseException("Invalid date", new String(text, offset, length), 0);
+        }
+        return epochDay(year, month, day);
+    }
+
+    /**
+     * Days since 1970-01-01 for a proleptic Gregorian date. Same result as <code>LocalDate.toEpochDay()</code>.
+     */
+    static int epochDay(int year, int month, int day) {
+        // Shift the year to start in March so the leap day is the last day of the year
+        int y = month <= 2 ? year - 1 : year;
+        int era = Math.floorDiv(y, 400);
+        int yearOfEra = y - era * 400;
+        int dayOfYear = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+        int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097 + dayOfEra - 719468;
+    }
+
+    private static int parseDigits(char[] text, int offset, int count) {
+        int result = 0;
+        for (int i = offset; i < offset + count; i++) {
+            int digit = text[i] - '0';
+            if (digit < 0 || digit > 9) {
+                return -1;
+            }
+            result = result * 10 + digit;
+        }
+        return result;
+    }
+}
@@ -31,7 +31,7 @@ public class CollectorController {
                 List<String> lakeIds = result.lakeResults().stream()
                         .map(RunLakeCollectorResult::lakeId)
                         .toList();
-                logger.info("Collectors have been run in %d milliseconds for lakes: %s".formatted(result.durationInMillis(), lakeIds));
+                logger.info(() -> "Collectors have been run in %d milliseconds for lakes: %s".formatted(result.durationInMillis(), lakeIds));
                 return ResponseEntity.ok(result);
             }
             case SOURCE_DATA_NOT_UPDATED -> {
@@ -49,7 +49,7 @@ public class CollectorController {
 
     @GetMapping("/{lakeId}")
     public ResponseEntity<RunLakeCollectorResult> runCollector(@PathVariable String lakeId) {
-        logger.info("Running collector for lake: %s".formatted(lakeId));
+        logger.info(() -> "Running collector for lake: %s".formatted(lakeId));
 
         RunLakeCollectorResult result = service.collectDataForLake(lakeId);
 
@@ -0,0 +1,133 @@
+package dev.webecke.lakestats.controller;
+
+import dev.webecke.lakestats.dao.DataAccessException;
+import dev.webecke.lakestats.service.LakeReadCache;
+import dev.webecke.lakestats.service.LakeStatsLogger;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.CrossOrigin;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.time.Duration;
+import java.util.function.Function;
+
+/**
+ * Serves each lake's published data from the {@link LakeReadCache}, so reads never go to the database once a
+ * document is cached. <br/>
+ * Every response carries a strong ETag, and a request whose <code>If-None-Match</code> matches it gets an empty 304.
+ * Bodies are gzipped ahead of time and sent that way to any client that accepts gzip.
+ */
+@RestController
+@RequestMapping("/api/lakes")
+@CrossOrigin(origins = "${app.read-api.allowed-origins:*}")
+public class LakeReadController {
+    private static final String GZIP = "gzip";
+
+    private final LakeReadCache cache;
+    private final CacheControl cacheControl;
+    private final LakeStatsLogger logger = new LakeStatsLogger(LakeReadController.class);
+
+    public LakeReadController(LakeReadCache cache,
+                              @Value("${app.read-api.max-age:5m}") Duration maxAge,
+                              @Value("${app.read-api.stale-while-revalidate:1d}") Duration staleWhileRevalidate) {
+        this.cache = cache;
+        this.cacheControl = CacheControl.maxAge(maxAge)
+                .staleWhileRevalidate(staleWhileRevalidate)
+                .cachePublic();
+    }
+
+    @GetMapping("/{lakeId}/current")
+    public ResponseEntity<byte[]> getCurrentConditions(@PathVariable String lakeId,
+                                                       @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch,
+                                                       @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
+        return serve(lakeId, cache::getCurrentConditions, ifNoneMatch, acceptEncoding);
+    }
+
+    /**
+     * @return the lake's past 365 days
+     */
+    @GetMapping("/{lakeId}/history")
+    public ResponseEntity<byte[]> getHistory(@PathVariable String lakeId,
+                                             @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch,
+                                             @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
+        return serve(lakeId, cache::getPast365Days, ifNoneMatch, acceptEncoding);
+    }
+
+    private ResponseEntity<byte[]> serve(String lakeId, Function<String, LakeReadCache.CachedResponse> lookup,
+                                         String ifNoneMatch, String acceptEncoding) {
+        LakeReadCache.CachedResponse response;
+        try {
+            response = lookup.apply(lakeId);
+        } catch (DataAccessException e) {
+            logger.errorForLake("Could not load data to serve for " + lakeId, lakeId, e);
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+        }
+        if (response == null) {
+            return ResponseEntity.notFound().build();
+        }
+
+        boolean gzip = acceptsGzip(acceptEncoding);
+        String etag = gzip ? response.gzipEtag() : response.etag();
+        if (matches(ifNoneMatch, response)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                    .eTag(etag)
+                    .cacheControl(cacheControl)
+                    .varyBy(HttpHeaders.ACCEPT_ENCODING)
+                    .build();
+        }
+
+        ResponseEntity.BodyBuilder builder = ResponseEntity.ok()
+                .eTag(etag)
+                .cacheControl(cacheControl)
+                .varyBy(HttpHeaders.ACCEPT_ENCODING)
+                .contentType(MediaType.APPLICATION_JSON);
+        if (gzip) {
+            builder.header(HttpHeaders.CONTENT_ENCODING, GZIP);
+        }
+        return builder.body(gzip ? response.gzipped() : response.json());
+    }
+
+    /**
+     * If-None-Match uses the weak comparison, and either encoding's ETag counts: they stand for the same content.
+     */
+    private static boolean matches(String ifNoneMatch, LakeReadCache.CachedResponse response) {
+        if (ifNoneMatch == null) { return false; }
+
+        for (String tag : ifNoneMatch.split(",")) {
+            String candidate = tag.trim();
+            if (candidate.equals("*")) { return true; }
+            if (candidate.startsWith("W/")) { candidate = candidate.substring(2); }
+            if (candidate.equals(response.etag()) || candidate.equals(response.gzipEtag())) { return true; }
+        }
+        return false;
+    }
+
+    private static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) { return false; }
+
+        for (String coding : acceptEncoding.split(",")) {
+            String[] parts = coding.split(";");
+            if (!parts[0].trim().equalsIgnoreCase(GZIP)) { continue; }
+            for (int i = 1; i < parts.length; i++) {
+                String parameter = parts[i].trim();
+                if (parameter.startsWith("q=")) {
+                    try {
+                        return Double.parseDouble(parameter.substring(2)) > 0;
+                    } catch (NumberFormatException e) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+}
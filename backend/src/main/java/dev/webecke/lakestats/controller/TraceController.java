@@ -0,0 +1,52 @@
+package dev.webecke.lakestats.controller;
+
+import dev.webecke.lakestats.service.LakeStatsLogger;
+import io.perfmark.PerfMark;
+import io.perfmark.tracewriter.TraceEventWriter;
+import jakarta.annotation.PreDestroy;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.io.IOException;
+import java.io.StringWriter;
+
+/**
+ * Serves a PerfMark trace of recent collection runs, in the Chrome trace event format (open it in
+ * <code>chrome://tracing</code> or <a href="https://ui.perfetto.dev">Perfetto</a>). <br/>
+ * Only exists when <code>app.tracing.enabled</code> is on, which is also what turns PerfMark recording on. With it
+ * off, every span in the pipeline is a no-op.
+ */
+@RestController
+@RequestMapping("/api/admin/trace")
+@ConditionalOnProperty(name = "app.tracing.enabled", havingValue = "true")
+public class TraceController {
+    private final LakeStatsLogger logger = new LakeStatsLogger(TraceController.class);
+
+    public TraceController() {
+        PerfMark.setEnabled(true);
+        logger.info("PerfMark tracing is enabled, traces are served from /api/admin/trace");
+    }
+
+    @PreDestroy
+    public void disableTracing() {
+        PerfMark.setEnabled(false);
+    }
+
+    /**
+     * @return everything PerfMark currently holds, which is the most recent marks of each thread
+     */
+    @GetMapping
+    public ResponseEntity<String> getTrace() throws IOException {
+        StringWriter trace = new StringWriter();
+        TraceEventWriter.writeTraceEvents(trace);
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"lakestats-trace.json\"")
+                .body(trace.toString());
+    }
+}
@@ -0,0 +1,34 @@
+package dev.webecke.lakestats.dao;
+
+import dev.webecke.lakestats.model.ArchiveManifest;
+import dev.webecke.lakestats.model.HistoricalPeriodData;
+import dev.webecke.lakestats.model.LakeSystemSettings;
+import dev.webecke.lakestats.model.RunLakeCollectorResult;
+import dev.webecke.lakestats.model.features.CurrentConditions;
+import dev.webecke.lakestats.model.geography.Lake;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Non-blocking counterpart of {@link DatabaseAccess}. Each call starts the round trip and returns straight away,
+ * so independent reads and writes can be in flight at the same time. <br/>
+ * Failures complete the future exceptionally with a {@link DataAccessException}. Reads of a document that doesn't
+ * exist complete with null, same as the blocking API.
+ */
+public interface AsyncDatabaseAccess {
+    CompletableFuture<Void> publishCurrentConditionsAsync(CurrentConditions conditions);
+    CompletableFuture<Void> publishLakeInfoAsync(Lake lake);
+    CompletableFuture<LakeSystemSettings> getLakeSystemSettingsAsync(String lakeId);
+    CompletableFuture<Lake> getLakeDetailsAsync(String lakeId);
+    CompletableFuture<RunLakeCollectorResult> getLastRunResultAsync(String lakeId);
+    CompletableFuture<Void> publishLastRunResultAsync(RunLakeCollectorResult result);
+    CompletableFuture<Void> publishPast365DaysAsync(HistoricalPeriodData data);
+    CompletableFuture<CurrentConditions> getCurrentConditionsAsync(String lakeId);
+    CompletableFuture<HistoricalPeriodData> getPast365DaysAsync(String lakeId);
+    CompletableFuture<Map<String, LakeSystemSettings>> getAllLakeSystemSettingsAsync();
+    CompletableFuture<Map<String, Lake>> getLakeDetailsAsync(List<String> lakeIds);
+    CompletableFuture<Map<String, RunLakeCollectorResult>> getLastRunSummariesAsync(List<String> lakeIds);
+    CompletableFuture<ArchiveManifest> getArchiveManifestAsync(String lakeId);
+}
@@ -1,5 +1,6 @@
 package dev.webecke.lakestats.dao;
 
+import dev.webecke.lakestats.model.ArchiveManifest;
 import dev.webecke.lakestats.model.HistoricalPeriodData;
 import dev.webecke.lakestats.model.RunLakeCollectorResult;
 import dev.webecke.lakestats.model.features.CurrentConditions;
@@ -7,6 +8,7 @@ import dev.webecke.lakestats.model.LakeSystemSettings;
 import dev.webecke.lakestats.model.geography.Lake;
 
 import java.util.List;
+import java.util.Map;
 
 public interface DatabaseAccess {
     void publishCurrentConditions(CurrentConditions conditions) throws DataAccessException;
@@ -17,4 +19,42 @@ public interface DatabaseAccess {
     RunLakeCollectorResult getLastRunResult(String lakeId) throws DataAccessException;
     void publishLastRunResult(RunLakeCollectorResult result) throws DataAccessException;
     void publishPast365Days(HistoricalPeriodData data) throws DataAccessException;
+
+    /**
+     * @return the lake's published current conditions, or null if none have been published
+     */
+    CurrentConditions getCurrentConditions(String lakeId) throws DataAccessException;
+
+    /**
+     * @return the lake's published past 365 days, or null if they haven't been published
+     */
+    HistoricalPeriodData getPast365Days(String lakeId) throws DataAccessException;
+
+    /**
+     * @return the settings of every lake, keyed and ordered by lake id
+     */
+    Map<String, LakeSystemSettings> getAllLakeSystemSettings() throws DataAccessException;
+
+    /**
+     * Reads the details of several lakes in one call. Lakes without details are left out of the result.
+     */
+    Map<String, Lake> getLakeDetails(List<String> lakeIds) throws DataAccessException;
+
+    /**
+     * Reads the last run result of several lakes in one call. Only the fields needed to tell whether a lake has
+     * already run today and to compare against the previous run are read (timestamp, dateCollected, lakeId, status
+     * and profile), the rest are left empty.
+     * Lakes that have never run are left out of the result.
+     */
+    Map<String, RunLakeCollectorResult> getLastRunSummaries(List<String> lakeIds) throws DataAccessException;
+
+    /**
+     * @return the index of the lake's calendar year archives, or null if nothing has been archived yet
+     */
+    ArchiveManifest getArchiveManifest(String lakeId) throws DataAccessException;
+
+    /**
+     * Starts a batch of documents for the lake that are published atomically, see {@link LakePublicationBatch}
+     */
+    LakePublicationBatch newPublicationBatch(String lakeId);
 }
@@ -0,0 +1,41 @@
+package dev.webecke.lakestats.dao;
+
+import dev.webecke.lakestats.model.ArchiveManifest;
+import dev.webecke.lakestats.model.HistoricalPeriodData;
+import dev.webecke.lakestats.model.LakeSnapshot;
+import dev.webecke.lakestats.model.RunLakeCollectorResult;
+import dev.webecke.lakestats.model.features.CurrentConditions;
+import dev.webecke.lakestats.model.geography.Lake;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A set of documents for a single lake that are published together. Nothing is written until {@link #commit()},
+ * and then either every document in the batch is written or none of them are, so readers never see a lake that is
+ * only partly updated.
+ */
+public interface LakePublicationBatch {
+    LakePublicationBatch currentConditions(CurrentConditions conditions);
+    LakePublicationBatch past365Days(HistoricalPeriodData data);
+    LakePublicationBatch lakeInfo(Lake lake);
+    LakePublicationBatch lastRunResult(RunLakeCollectorResult result);
+
+    /**
+     * Adds a {@link HistoricalPeriodData.PeriodType#CALENDAR_YEAR} period, stored under its year
+     */
+    LakePublicationBatch calendarYear(HistoricalPeriodData data);
+    LakePublicationBatch archiveManifest(ArchiveManifest manifest);
+    LakePublicationBatch snapshot(LakeSnapshot snapshot);
+
+    /**
+     * Writes every document in the batch in a single round trip, and waits for the database to confirm it.
+     * @throws DataAccessException if the batch could not be written, in which case none of it was
+     */
+    void commit() throws DataAccessException;
+
+    /**
+     * Same as {@link #commit()}, without waiting. The future completes exceptionally with a
+     * {@link DataAccessException} if the batch could not be written.
+     */
+    CompletableFuture<Void> commitAsync();
+}
@@ -1,49 +1,109 @@
 package dev.webecke.lakestats.dao.firebase;
 
+import com.google.api.core.ApiFuture;
+import com.google.api.core.ApiFutureCallback;
+import com.google.api.core.ApiFutures;
 import com.google.cloud.firestore.DocumentReference;
+import com.google.cloud.firestore.DocumentSnapshot;
+import com.google.cloud.firestore.FieldMask;
+import com.google.cloud.firestore.QueryDocumentSnapshot;
+import com.google.cloud.firestore.WriteBatch;
+import com.google.common.util.concurrent.MoreExecutors;
+import dev.webecke.lakestats.dao.AsyncDatabaseAccess;
 import dev.webecke.lakestats.dao.DataAccessException;
 import dev.webecke.lakestats.dao.DatabaseAccess;
+import dev.webecke.lakestats.dao.LakePublicationBatch;
+import dev.webecke.lakestats.model.ArchiveManifest;
 import dev.webecke.lakestats.model.HistoricalPeriodData;
+import dev.webecke.lakestats.model.LakeSnapshot;
 import dev.webecke.lakestats.model.RunLakeCollectorResult;
 import dev.webecke.lakestats.model.features.CurrentConditions;
 
 import com.google.cloud.firestore.Firestore;
 import dev.webecke.lakestats.model.LakeSystemSettings;
 import dev.webecke.lakestats.model.geography.Lake;
+import dev.webecke.lakestats.service.CollectionMetrics;
 import dev.webecke.lakestats.utils.Serializer;
+import io.perfmark.Link;
+import io.perfmark.PerfMark;
+import io.perfmark.TaskCloseable;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Function;
 
 @Service
-public class FirestoreDao implements DatabaseAccess {
+public class FirestoreDao implements DatabaseAccess, AsyncDatabaseAccess {
     public static final String SYSTEM_ERRORS_ID = "system-errors";
     public static final String GENERAL_ID = "system";
     public static final String LAKE_INFO_ID = "lake-info";
+    public static final String CURRENT_CONDITIONS_ID = "current_conditions";
+    public static final String LAST_RUN_RESULT_ID = "last_run_result";
+    public static final String PAST_365_DAYS_ID = "past_365_days";
+    public static final String CALENDAR_YEAR_ID_PREFIX = "calendar_year_";
+    public static final String ARCHIVE_MANIFEST_ID = "calendar_year_manifest";
+    public static final String LAKE_SNAPSHOT_ID = "lake_snapshot";
+    // Fields of last_run_result needed to decide whether a lake has already run today, and to carry its timing baseline
+    private static final FieldMask LAST_RUN_SUMMARY_FIELDS = FieldMask.of("timestamp", "dateCollected", "lakeId", "status", "profile");
+    // Fields left out of a document's fingerprint because they change on every run even when nothing else does
+    private static final Map<String, Set<String>> FINGERPRINT_IGNORED_FIELDS = Map.of(
+            CURRENT_CONDITIONS_ID, Set.of("timeOfCollection"),
+            LAKE_SNAPSHOT_ID, Set.of("publishedAt", "currentConditions.timeOfCollection")
+    );
 
     private final Firestore firestore;
     private final Serializer serializer;
+    private final LakeConfigCache configCache;
+    private final PublishedFingerprints fingerprints = new PublishedFingerprints();
+    private final CollectionMetrics metrics;
+    private final boolean packHistory;
 
-    public FirestoreDao(Firestore firestore, Serializer serializer) {
+    public FirestoreDao(Firestore firestore, Serializer serializer, CollectionMetrics metrics,
+                        @Value("${app.firestore.cache.enabled:true}") boolean cacheEnabled,
+                        @Value("${app.firestore.cache.max-entries:256}") int cacheMaxEntries,
+                        @Value("${app.firestore.pack-history:false}") boolean packHistory) {
         this.firestore = firestore;
         this.serializer = serializer;
+        this.metrics = metrics;
+        this.packHistory = packHistory;
+        this.configCache = new LakeConfigCache(firestore, cacheEnabled, cacheMaxEntries,
+                snapshot -> deserialize(snapshot, LakeSystemSettings.class),
+                snapshot -> deserialize(snapshot, Lake.class));
+    }
+
+    @PreDestroy
+    public void close() {
+        configCache.close();
     }
 
     @Override
     public void publishCurrentConditions(CurrentConditions conditions) throws DataAccessException {
-        try {
-            firestore.collection(conditions.lakeId()).document("current_conditions").set(serializer.serializeToMap(conditions));
-        } catch (Exception e) {
-            throw new DataAccessException("Failed to publish current conditions for " + conditions.lakeId(), e);
-        }
+        await(publishCurrentConditionsAsync(conditions));
+    }
+
+    @Override
+    public CompletableFuture<Void> publishCurrentConditionsAsync(CurrentConditions conditions) {
+        return write(conditions.lakeId(), CURRENT_CONDITIONS_ID, conditions,
+                "Failed to publish current conditions for " + conditions.lakeId());
     }
 
     @Override
     public void publishLakeInfo(Lake lake) throws DataAccessException {
-        firestore.collection(lake.id()).document(LAKE_INFO_ID).set(serializer.serializeToMap(lake));
+        await(publishLakeInfoAsync(lake));
     }
 
+    @Override
+    public CompletableFuture<Void> publishLakeInfoAsync(Lake lake) {
+        return write(lake.id(), LAKE_INFO_ID, lake, "Failed to publish lake info for " + lake.id());
+    }
 
     public List<String> getAllLakeIds() throws DataAccessException {
         try {
@@ -61,81 +121,379 @@ public class FirestoreDao implements DatabaseAccess {
     }
 
     public LakeSystemSettings getLakeSystemSettings(String lakeId) throws DataAccessException {
-        try {
-            var documentSnapshot = firestore.collection(GENERAL_ID)
-                    .document(lakeId)
-                    .get()
-                    .get(); // blocking call to get()
-
-            if (!documentSnapshot.exists()) {
-                return null;
-            }
+        return await(getLakeSystemSettingsAsync(lakeId));
+    }
 
-            return serializer.deserialize(
-                    serializer.serialize(documentSnapshot.getData()),
-                    LakeSystemSettings.class
-            );
-        } catch (Exception e) {
-            throw new DataAccessException("Failed to fetch lake system settings for " + lakeId, e);
-        }
+    @Override
+    public CompletableFuture<LakeSystemSettings> getLakeSystemSettingsAsync(String lakeId) {
+        return configCache.getLakeSystemSettings(lakeId, () -> read(firestore.collection(GENERAL_ID).document(lakeId),
+                LakeSystemSettings.class, "Failed to fetch lake system settings for " + lakeId));
     }
 
     public Lake getLakeDetails(String lakeId) throws DataAccessException {
-        try {
-            var documentSnapshot = firestore.collection(lakeId)
-                    .document(LAKE_INFO_ID)
-                    .get()
-                    .get(); // blocking call to get()
-
-            if (!documentSnapshot.exists()) {
-                return null;
-            }
+        return await(getLakeDetailsAsync(lakeId));
+    }
 
-            return serializer.deserialize(
-                    serializer.serialize(documentSnapshot.getData()),
-                    Lake.class
-            );
-        } catch (Exception e) {
-            throw new DataAccessException("Failed to fetch lake details for " + lakeId, e);
-        }
+    @Override
+    public CompletableFuture<Lake> getLakeDetailsAsync(String lakeId) {
+        return configCache.getLakeDetails(lakeId, () -> read(firestore.collection(lakeId).document(LAKE_INFO_ID),
+                Lake.class, "Failed to fetch lake details for " + lakeId));
     }
 
     @Override
     public void publishLastRunResult(RunLakeCollectorResult result) throws DataAccessException {
-        try {
-            firestore.collection(result.lakeId()).document("last_run_result").set(serializer.serializeToMap(result));
-        } catch (Exception e) {
-            throw new DataAccessException("Failed to publish last run result for " + result.lakeId(), e);
-        }
+        await(publishLastRunResultAsync(result));
+    }
+
+    @Override
+    public CompletableFuture<Void> publishLastRunResultAsync(RunLakeCollectorResult result) {
+        return write(result.lakeId(), LAST_RUN_RESULT_ID, result,
+                "Failed to publish last run result for " + result.lakeId());
     }
 
     @Override
     public void publishPast365Days(HistoricalPeriodData data) throws DataAccessException {
+        await(publishPast365DaysAsync(data));
+    }
+
+    @Override
+    public CompletableFuture<Void> publishPast365DaysAsync(HistoricalPeriodData data) {
+        return write(data.lakeId(), PAST_365_DAYS_ID, data, "Failed to publish past 365 dats for " + data.lakeId());
+    }
+
+    @Override
+    public CurrentConditions getCurrentConditions(String lakeId) throws DataAccessException {
+        return await(getCurrentConditionsAsync(lakeId));
+    }
+
+    @Override
+    public CompletableFuture<CurrentConditions> getCurrentConditionsAsync(String lakeId) {
+        return read(firestore.collection(lakeId).document(CURRENT_CONDITIONS_ID), CurrentConditions.class,
+                "Failed to fetch current conditions for " + lakeId);
+    }
+
+    @Override
+    public HistoricalPeriodData getPast365Days(String lakeId) throws DataAccessException {
+        return await(getPast365DaysAsync(lakeId));
+    }
+
+    @Override
+    public CompletableFuture<HistoricalPeriodData> getPast365DaysAsync(String lakeId) {
+        return read(firestore.collection(lakeId).document(PAST_365_DAYS_ID), HistoricalPeriodData.class,
+                "Failed to fetch past 365 days for " + lakeId);
+    }
+
+    @Override
+    public RunLakeCollectorResult getLastRunResult(String lakeId) throws DataAccessException {
+        return await(getLastRunResultAsync(lakeId));
+    }
+
+    @Override
+    public CompletableFuture<RunLakeCollectorResult> getLastRunResultAsync(String lakeId) {
+        return read(firestore.collection(lakeId).document(LAST_RUN_RESULT_ID), RunLakeCollectorResult.class,
+                "Failed to fetch last run result for " + lakeId);
+    }
+
+    @Override
+    public Map<String, LakeSystemSettings> getAllLakeSystemSettings() throws DataAccessException {
+        return await(getAllLakeSystemSettingsAsync());
+    }
+
+    @Override
+    public CompletableFuture<Map<String, LakeSystemSettings>> getAllLakeSystemSettingsAsync() {
+        Map<String, LakeSystemSettings> cached = configCache.allLakeSystemSettings();
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached);
+        }
+
+        return metrics.timeFirestore("read_all", "lake_settings", CollectionMetrics.ALL_LAKES,
+                () -> adapt(firestore.collection(GENERAL_ID).get(), querySnapshot -> {
+                    Map<String, LakeSystemSettings> settings = new TreeMap<>();
+                    for (QueryDocumentSnapshot document : querySnapshot.getDocuments()) {
+                        settings.put(document.getId(), deserialize(document, LakeSystemSettings.class));
+                    }
+                    return settings;
+                }, "Failed to fetch lake system settings"));
+    }
+
+    @Override
+    public Map<String, Lake> getLakeDetails(List<String> lakeIds) throws DataAccessException {
+        return await(getLakeDetailsAsync(lakeIds));
+    }
+
+    @Override
+    public CompletableFuture<Map<String, Lake>> getLakeDetailsAsync(List<String> lakeIds) {
+        Map<String, Lake> lakes = new TreeMap<>();
+        List<String> uncached = configCache.collectCachedLakeDetails(lakeIds, lakes);
+
+        return readAll(uncached, LAKE_INFO_ID, null, Lake.class, "Failed to fetch lake details")
+                .thenApply(read -> {
+                    lakes.putAll(read);
+                    return lakes;
+                });
+    }
+
+    @Override
+    public Map<String, RunLakeCollectorResult> getLastRunSummaries(List<String> lakeIds) throws DataAccessException {
+        return await(getLastRunSummariesAsync(lakeIds));
+    }
+
+    @Override
+    public CompletableFuture<Map<String, RunLakeCollectorResult>> getLastRunSummariesAsync(List<String> lakeIds) {
+        return readAll(lakeIds, LAST_RUN_RESULT_ID, LAST_RUN_SUMMARY_FIELDS, RunLakeCollectorResult.class,
+                "Failed to fetch last run results");
+    }
+
+    @Override
+    public ArchiveManifest getArchiveManifest(String lakeId) throws DataAccessException {
+        return await(getArchiveManifestAsync(lakeId));
+    }
+
+    @Override
+    public CompletableFuture<ArchiveManifest> getArchiveManifestAsync(String lakeId) {
+        return read(firestore.collection(lakeId).document(ARCHIVE_MANIFEST_ID), ArchiveManifest.class,
+                "Failed to fetch archive manifest for " + lakeId);
+    }
+
+    @Override
+    public LakePublicationBatch newPublicationBatch(String lakeId) {
+        return new FirestorePublicationBatch(lakeId);
+    }
+
+    private <T> CompletableFuture<T> read(DocumentReference document, Class<T> type, String errorMessage) {
+        // Settings live in the system collection, under the lake's id
+        boolean settings = document.getParent().getId().equals(GENERAL_ID);
+        return metrics.timeFirestore("read",
+                settings ? "lake_settings" : metricsDocumentName(document.getId()),
+                settings ? document.getId() : document.getParent().getId(),
+                () -> adapt(document.get(), snapshot -> deserialize(snapshot, type), errorMessage));
+    }
+
+    /**
+     * Reads the same document from several lakes' collections in a single round trip
+     * @param fieldMask the fields to read, or null for the whole document
+     * @return the documents that exist, keyed and ordered by lake id
+     */
+    private <T> CompletableFuture<Map<String, T>> readAll(List<String> lakeIds, String documentId, FieldMask fieldMask,
+                                                          Class<T> type, String errorMessage) {
+        if (lakeIds.isEmpty()) {
+            return CompletableFuture.completedFuture(new TreeMap<>());
+        }
+
+        DocumentReference[] documents = lakeIds.stream()
+                .map(lakeId -> firestore.collection(lakeId).document(documentId))
+                .toArray(DocumentReference[]::new);
+
+        return metrics.timeFirestore("read_all", metricsDocumentName(documentId), CollectionMetrics.ALL_LAKES,
+                () -> adapt(firestore.getAll(documents, fieldMask), snapshots -> {
+                    Map<String, T> results = new TreeMap<>();
+                    for (DocumentSnapshot snapshot : snapshots) {
+                        T value = deserialize(snapshot, type);
+                        if (value != null) {
+                            results.put(snapshot.getReference().getParent().getId(), value);
+                        }
+                    }
+                    return results;
+                }, errorMessage));
+    }
+
+    /**
+     * Writes a document, unless it is fingerprinted and its content is the same as what was last published to it
+     */
+    private CompletableFuture<Void> write(String lakeId, String documentId, Object data, String errorMessage) {
         try {
-            firestore.collection(data.lakeId()).document("past_365_days").set(serializer.serializeToMap(data));
+            DocumentReference reference = firestore.collection(lakeId).document(documentId);
+            Map<String, Object> document = toDocument(data);
+            String fingerprint = fingerprint(documentId, document);
+            if (fingerprint != null && fingerprints.isUnchanged(reference.getPath(), fingerprint)) {
+                metrics.countSkippedWrite(metricsDocumentName(documentId), lakeId);
+                return CompletableFuture.completedFuture(null);
+            }
+
+            return metrics.timeFirestore("write", metricsDocumentName(documentId), lakeId,
+                    () -> adapt(reference.set(document), writeResult -> {
+                        if (fingerprint != null) { fingerprints.published(reference.getPath(), fingerprint); }
+                        return null;
+                    }, errorMessage));
         } catch (Exception e) {
-            throw new DataAccessException("Failed to publish past 365 dats for " + data.lakeId(), e);
+            return CompletableFuture.failedFuture(new DataAccessException(errorMessage, e));
         }
     }
 
-    @Override
-    public RunLakeCollectorResult getLastRunResult(String lakeId) throws DataAccessException {
+    /**
+     * Fingerprints a document and stores the fingerprint in it. The last run result is never fingerprinted: it
+     * records that a run happened, so it has to be written every time.
+     * @return the fingerprint, or null if the document isn't fingerprinted
+     */
+    private String fingerprint(String documentId, Map<String, Object> document) {
+        if (LAST_RUN_RESULT_ID.equals(documentId)) { return null; }
+
+        String fingerprint = PublishedFingerprints.fingerprint(document,
+                FINGERPRINT_IGNORED_FIELDS.getOrDefault(documentId, Set.of()));
+        document.put(PublishedFingerprints.FIELD, fingerprint);
+        return fingerprint;
+    }
+
+    /**
+     * Calendar years share a name, so the metrics don't get a new series every year
+     */
+    private static String metricsDocumentName(String documentId) {
+        if (documentId.startsWith(CALENDAR_YEAR_ID_PREFIX) && !documentId.equals(ARCHIVE_MANIFEST_ID)) {
+            return "calendar_year";
+        }
+        return documentId;
+    }
+
+    private Map<String, Object> toDocument(Object data) {
+        if (packHistory && data instanceof HistoricalPeriodData historicalData) {
+            return serializer.serializeToPackedMap(historicalData);
+        }
+        Map<String, Object> document = serializer.serializeToMap(data);
+        if (packHistory && data instanceof LakeSnapshot snapshot && snapshot.past365Days() != null) {
+            document.put("past365Days", serializer.serializeToPackedMap(snapshot.past365Days()));
+        }
+        return document;
+    }
+
+    private <T> T deserialize(DocumentSnapshot documentSnapshot, Class<T> type) {
+        if (!documentSnapshot.exists()) {
+            return null;
+        }
+
+        fingerprints.read(documentSnapshot);
+        return serializer.deserializeFromMap(documentSnapshot.getData(), type);
+    }
+
+    /**
+     * Bridges a Firestore {@link ApiFuture} to a {@link CompletableFuture} without parking a thread on it. The
+     * mapping runs on the thread that completes the Firestore call, so it should stay cheap. When tracing, the
+     * completion is linked back to the task that sent the call.
+     */
+    private static <T, R> CompletableFuture<R> adapt(ApiFuture<T> apiFuture, Function<T, R> mapper, String errorMessage) {
+        CompletableFuture<R> result = new CompletableFuture<>();
+        Link link = PerfMark.linkOut();
+        ApiFutures.addCallback(apiFuture, new ApiFutureCallback<>() {
+            @Override
+            public void onSuccess(T value) {
+                try (TaskCloseable task = PerfMark.traceTask("Firestore.onSuccess")) {
+                    PerfMark.linkIn(link);
+                    result.complete(mapper.apply(value));
+                } catch (Exception e) {
+                    result.completeExceptionally(new DataAccessException(errorMessage, e));
+                }
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+                try (TaskCloseable task = PerfMark.traceTask("Firestore.onFailure")) {
+                    PerfMark.linkIn(link);
+                }
+                result.completeExceptionally(new DataAccessException(errorMessage, t));
+            }
+        }, MoreExecutors.directExecutor());
+        return result;
+    }
+
+    /**
+     * Waits for an async call for the blocking API, rethrowing its {@link DataAccessException} as is.
+     */
+    private static <T> T await(CompletableFuture<T> future) throws DataAccessException {
         try {
-            var documentSnapshot = firestore.collection(lakeId)
-                    .document("last_run_result")
-                    .get()
-                    .get(); // blocking call to get()
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof DataAccessException dataAccessException) {
+                throw dataAccessException;
+            }
+            throw new DataAccessException("Database call failed", e.getCause());
+        }
+    }
+
+    private class FirestorePublicationBatch implements LakePublicationBatch {
+        private final String lakeId;
+        private final WriteBatch batch = firestore.batch();
+        // Fingerprints of the documents in the batch, recorded as published once it commits
+        private final PublishedFingerprints.Pending pendingFingerprints = fingerprints.pending();
+        private int writes = 0;
+
+        private FirestorePublicationBatch(String lakeId) {
+            this.lakeId = lakeId;
+        }
+
+        @Override
+        public LakePublicationBatch currentConditions(CurrentConditions conditions) {
+            return set(conditions.lakeId(), CURRENT_CONDITIONS_ID, conditions);
+        }
+
+        @Override
+        public LakePublicationBatch past365Days(HistoricalPeriodData data) {
+            return set(data.lakeId(), PAST_365_DAYS_ID, data);
+        }
+
+        @Override
+        public LakePublicationBatch lakeInfo(Lake lake) {
+            return set(lake.id(), LAKE_INFO_ID, lake);
+        }
 
-            if (!documentSnapshot.exists()) {
-                return null;
+        @Override
+        public LakePublicationBatch lastRunResult(RunLakeCollectorResult result) {
+            return set(result.lakeId(), LAST_RUN_RESULT_ID, result);
+        }
+
+        @Override
+        public LakePublicationBatch calendarYear(HistoricalPeriodData data) {
+            if (data.type() != HistoricalPeriodData.PeriodType.CALENDAR_YEAR) {
+                throw new IllegalArgumentException("Expected a CALENDAR_YEAR period, got " + data.type());
             }
+            return set(data.lakeId(), CALENDAR_YEAR_ID_PREFIX + data.startDate().getYear(), data);
+        }
 
-            return serializer.deserialize(
-                    serializer.serialize(documentSnapshot.getData()),
-                    RunLakeCollectorResult.class
-            );
-        } catch (Exception e) {
-            throw new DataAccessException("Failed to fetch last run result for " + lakeId, e);
+        @Override
+        public LakePublicationBatch archiveManifest(ArchiveManifest manifest) {
+            return set(manifest.lakeId(), ARCHIVE_MANIFEST_ID, manifest);
+        }
+
+        @Override
+        public LakePublicationBatch snapshot(LakeSnapshot snapshot) {
+            return set(snapshot.lakeId(), LAKE_SNAPSHOT_ID, snapshot);
+        }
+
+        @Override
+        public void commit() throws DataAccessException {
+            await(commitAsync());
+        }
+
+        @Override
+        public CompletableFuture<Void> commitAsync() {
+            if (writes == 0) {
+                return CompletableFuture.completedFuture(null); // Everything was unchanged
+            }
+
+            return metrics.timeFirestore("batch_commit", "batch", lakeId,
+                    () -> adapt(batch.commit(), writeResults -> {
+                        pendingFingerprints.committed();
+                        return null;
+                    }, "Failed to publish batch for " + lakeId));
+        }
+
+        private LakePublicationBatch set(String documentLakeId, String documentId, Object document) {
+            if (!lakeId.equals(documentLakeId)) {
+                throw new IllegalArgumentException("Can't add %s for %s to the publication batch for %s"
+                        .formatted(documentId, documentLakeId, lakeId));
+            }
+            DocumentReference reference = firestore.collection(lakeId).document(documentId);
+            Map<String, Object> data = toDocument(document);
+            String fingerprint = fingerprint(documentId, data);
+            if (fingerprint != null) {
+                if (fingerprints.isUnchanged(reference.getPath(), fingerprint)) {
+                    metrics.countSkippedWrite(metricsDocumentName(documentId), lakeId);
+                    return this;
+                }
+                pendingFingerprints.add(reference.getPath(), fingerprint);
+            }
+
+            batch.set(reference, data);
+            writes++;
+            return this;
         }
     }
 }
@@ -0,0 +1,247 @@
+package dev.webecke.lakestats.dao.firebase;
+
+import com.google.cloud.firestore.DocumentChange;
+import com.google.cloud.firestore.DocumentSnapshot;
+import com.google.cloud.firestore.EventListener;
+import com.google.cloud.firestore.Firestore;
+import com.google.cloud.firestore.FirestoreException;
+import com.google.cloud.firestore.ListenerRegistration;
+import com.google.cloud.firestore.QuerySnapshot;
+import dev.webecke.lakestats.model.LakeSystemSettings;
+import dev.webecke.lakestats.model.geography.Lake;
+import dev.webecke.lakestats.service.LakeStatsLogger;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * In-process cache of each lake's {@link LakeSystemSettings} and {@link Lake} details, which rarely change. <br/>
+ * Instead of expiring entries, the cache is kept current by Firestore snapshot listeners: one on the whole
+ * <code>system</code> collection for settings, and one on the <code>lake-info</code> document of each cached lake.
+ * Once the listeners have delivered their first snapshot, reads are served from memory and a run does no
+ * configuration reads at all. <br/>
+ * Both maps are bounded and evict the least recently used lake. Evicting a lake's details also stops its listener.
+ * If a listener fails, its entries are dropped and reads fall back to the loader until the listener is set up again.
+ */
+class LakeConfigCache {
+    // How long a read waits for a new listener's first snapshot before going to Firestore directly
+    private static final long FIRST_SNAPSHOT_TIMEOUT_SECONDS = 10;
+
+    private final LakeStatsLogger logger = new LakeStatsLogger(LakeConfigCache.class);
+    private final Firestore firestore;
+    private final boolean enabled;
+    private final Function<DocumentSnapshot, LakeSystemSettings> settingsReader;
+    private final Function<DocumentSnapshot, Lake> lakeReader;
+
+    // All state below is guarded by this
+    private final Map<String, LakeSystemSettings> settings;
+    private final Map<String, LakeInfoListener> lakes;
+    private CompletableFuture<Void> settingsLoaded = null;
+    private ListenerRegistration settingsRegistration = null;
+    private boolean settingsEvicted = false;
+
+    LakeConfigCache(Firestore firestore, boolean enabled, int maxEntries,
+                    Function<DocumentSnapshot, LakeSystemSettings> settingsReader,
+                    Function<DocumentSnapshot, Lake> lakeReader) {
+        if (maxEntries < 1) {
+            throw new IllegalArgumentException("app.firestore.cache.max-entries must be at least 1, got " + maxEntries);
+        }
+        this.firestore = firestore;
+        this.enabled = enabled;
+        this.settingsReader = settingsReader;
+        this.lakeReader = lakeReader;
+        this.settings = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, LakeSystemSettings> eldest) {
+                if (size() <= maxEntries) { return false; }
+                settingsEvicted = true;
+                return true;
+            }
+        };
+        this.lakes = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, LakeInfoListener> eldest) {
+                if (size() <= maxEntries) { return false; }
+                eldest.getValue().registration.remove();
+                return true;
+            }
+        };
+    }
+
+    /**
+     * @param loader reads the settings from Firestore, used when they aren't cached
+     */
+    CompletableFuture<LakeSystemSettings> getLakeSystemSettings(String lakeId,
+                                                                Supplier<CompletableFuture<LakeSystemSettings>> loader) {
+        if (!enabled) { return loader.get(); }
+
+        return awaitFirstSnapshot(settingsListener())
+                .handle((ignored, error) -> {
+                    synchronized (this) {
+                        if (error == null && settings.containsKey(lakeId)) {
+                            return CompletableFuture.completedFuture(settings.get(lakeId));
+                        }
+                    }
+                    // Evicted, never existed, or the listener is down
+                    return loader.get().thenApply(loaded -> cacheSettingsIfAbsent(lakeId, loaded));
+                })
+                .thenCompose(Function.identity());
+    }
+
+    /**
+     * @param loader reads the lake from Firestore, used when the lake's listener can't deliver it in time
+     */
+    CompletableFuture<Lake> getLakeDetails(String lakeId, Supplier<CompletableFuture<Lake>> loader) {
+        if (!enabled) { return loader.get(); }
+
+        CompletableFuture<Lake> current;
+        synchronized (this) {
+            current = listenerFor(lakeId).current;
+        }
+        return awaitFirstSnapshot(current).exceptionallyCompose(e -> loader.get());
+    }
+
+    /**
+     * @return every lake's settings, ordered by lake id, if the listener has delivered them and none have been
+     *         evicted since. Otherwise null, and the caller has to read them itself.
+     */
+    synchronized Map<String, LakeSystemSettings> allLakeSystemSettings() {
+        if (!enabled) { return null; }
+
+        CompletableFuture<Void> loaded = settingsListener();
+        if (!loaded.isDone() || loaded.isCompletedExceptionally() || settingsEvicted) { return null; }
+        return new TreeMap<>(settings);
+    }
+
+    /**
+     * Copies the details of every given lake that is already cached into <code>found</code>. Listeners are started
+     * for the other lakes, so they can be served from memory next time.
+     * @return the lakes that weren't cached and still have to be read
+     */
+    synchronized List<String> collectCachedLakeDetails(List<String> lakeIds, Map<String, Lake> found) {
+        if (!enabled) { return lakeIds; }
+
+        List<String> missing = new ArrayList<>();
+        for (String lakeId : lakeIds) {
+            CompletableFuture<Lake> current = listenerFor(lakeId).current;
+            if (!current.isDone() || current.isCompletedExceptionally()) {
+                missing.add(lakeId);
+            } else if (current.join() != null) {
+                found.put(lakeId, current.join());
+            }
+        }
+        return missing;
+    }
+
+    /**
+     * Stops every listener and empties the cache
+     */
+    synchronized void close() {
+        if (settingsRegistration != null) { settingsRegistration.remove(); }
+        settingsRegistration = null;
+        settingsLoaded = null;
+        settings.clear();
+
+        lakes.values().forEach(listener -> listener.registration.remove());
+        lakes.clear();
+    }
+
+    private LakeInfoListener listenerFor(String lakeId) {
+        LakeInfoListener listener = lakes.get(lakeId);
+        if (listener == null) {
+            listener = new LakeInfoListener(lakeId);
+            lakes.put(lakeId, listener);
+            listener.registration = firestore.collection(lakeId)
+                    .document(FirestoreDao.LAKE_INFO_ID)
+                    .addSnapshotListener(listener);
+        }
+        return listener;
+    }
+
+    private synchronized CompletableFuture<Void> settingsListener() {
+        if (settingsLoaded == null) {
+            CompletableFuture<Void> loaded = new CompletableFuture<>();
+            settingsLoaded = loaded;
+            settingsEvicted = false;
+            settingsRegistration = firestore.collection(FirestoreDao.GENERAL_ID)
+                    .addSnapshotListener((snapshot, error) -> onSettingsSnapshot(loaded, snapshot, error));
+        }
+        return settingsLoaded;
+    }
+
+    private void onSettingsSnapshot(CompletableFuture<Void> loaded, QuerySnapshot snapshot, FirestoreException error) {
+        synchronized (this) {
+            if (settingsLoaded != loaded) { return; } // from a listener that has since been replaced
+
+            if (error != null) {
+                logger.error("Lake settings listener failed, falling back to direct reads", error);
+                settingsRegistration.remove();
+                settingsRegistration = null;
+                settingsLoaded = null;
+                settings.clear();
+                loaded.completeExceptionally(error);
+                return;
+            }
+
+            for (DocumentChange change : snapshot.getDocumentChanges()) {
+                String lakeId = change.getDocument().getId();
+                if (change.getType() == DocumentChange.Type.REMOVED) {
+                    settings.remove(lakeId);
+                } else {
+                    settings.put(lakeId, settingsReader.apply(change.getDocument()));
+                }
+            }
+        }
+        loaded.complete(null);
+    }
+
+    /**
+     * Caches settings read directly, unless the listener has delivered a (newer) value in the meantime
+     */
+    private synchronized LakeSystemSettings cacheSettingsIfAbsent(String lakeId, LakeSystemSettings loaded) {
+        if (loaded == null || settingsLoaded == null || !settingsLoaded.isDone()) { return loaded; }
+        LakeSystemSettings existing = settings.putIfAbsent(lakeId, loaded);
+        return existing != null ? existing : loaded;
+    }
+
+    private static <T> CompletableFuture<T> awaitFirstSnapshot(CompletableFuture<T> snapshot) {
+        // Copied so a timeout only affects this caller, not the shared future
+        return snapshot.copy().orTimeout(FIRST_SNAPSHOT_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+    }
+
+    private class LakeInfoListener implements EventListener<DocumentSnapshot> {
+        private final String lakeId;
+        private ListenerRegistration registration;
+        // Completed by the first snapshot, then replaced by an already completed future on each change
+        private volatile CompletableFuture<Lake> current = new CompletableFuture<>();
+
+        private LakeInfoListener(String lakeId) {
+            this.lakeId = lakeId;
+        }
+
+        @Override
+        public void onEvent(DocumentSnapshot snapshot, FirestoreException error) {
+            if (error != null) {
+                logger.errorForLake("Lake info listener failed, falling back to direct reads", lakeId, error);
+                synchronized (LakeConfigCache.this) {
+                    if (lakes.get(lakeId) == this) { lakes.remove(lakeId); }
+                    registration.remove();
+                }
+                current.completeExceptionally(error);
+                return;
+            }
+
+            Lake lake = snapshot.exists() ? lakeReader.apply(snapshot) : null;
+            if (!current.complete(lake)) {
+                current = CompletableFuture.completedFuture(lake);
+            }
+        }
+    }
+}
@@ -0,0 +1,180 @@
+package dev.webecke.lakestats.dao.firebase;
+
+import com.google.cloud.firestore.DocumentSnapshot;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Remembers a fingerprint of the last content published to each document, so a write of identical content can be
+ * skipped. <br/>
+ * The fingerprint is a SHA-256 over the serialized document, with map keys in sorted order so it doesn't depend on
+ * field order, and whole numbers hashed the same whether they are a Long or a Double (documents that go through
+ * JSON have only Doubles, records keep their own number types). It is also stored in the document under {@link #FIELD}, which lets a document read for another
+ * reason (such as lake info) seed the fingerprint after a restart, without reading anything extra. <br/>
+ * A document that has never been seen is always written, so at worst a skip is missed, never a change.
+ */
+class PublishedFingerprints {
+    static final String FIELD = "contentFingerprint";
+
+    // Keyed by document path (lakeId/documentId)
+    private final Map<String, String> fingerprints = new ConcurrentHashMap<>();
+
+    /**
+     * @param ignoredFields fields left out of the fingerprint, for values that change on every run without the
+     *                      content changing (like a collection timestamp). Fields of nested maps are given by their
+     *                      dotted path, such as <code>currentConditions.timeOfCollection</code>.
+     */
+    static String fingerprint(Map<String, Object> document, Set<String> ignoredFields) {
+        Hasher hasher = new Hasher();
+        Map<String, Object> fields = new TreeMap<>(document);
+        fields.remove(FIELD);
+        for (String path : ignoredFields) {
+            fields = without(fields, path);
+        }
+        hasher.update(fields);
+        return HexFormat.of().formatHex(hasher.digest.digest());
+    }
+
+    /**
+     * @return a copy of <code>fields</code> without the field at <code>path</code>, copying only the maps on the
+     *         way to it so the document itself is left as it is
+     */
+    private static Map<String, Object> without(Map<?, ?> fields, String path) {
+        Map<String, Object> copy = new TreeMap<>();
+        fields.forEach((key, value) -> copy.put(key.toString(), value));
+
+        int dot = path.indexOf('.');
+        if (dot < 0) {
+            copy.remove(path);
+        } else if (copy.get(path.substring(0, dot)) instanceof Map<?, ?> nested) {
+            copy.put(path.substring(0, dot), without(nested, path.substring(dot + 1)));
+        }
+        return copy;
+    }
+
+    boolean isUnchanged(String path, String fingerprint) {
+        return fingerprint.equals(fingerprints.get(path));
+    }
+
+    /**
+     * Call only once the write has been committed
+     */
+    void published(String path, String fingerprint) {
+        fingerprints.put(path, fingerprint);
+    }
+
+    /**
+     * @return an empty set of fingerprints for the writes of one batch
+     */
+    Pending pending() {
+        return new Pending();
+    }
+
+    /**
+     * Fingerprints of the writes in a batch, which are only published together once the batch has been committed.
+     * A batch that fails is simply dropped, so its documents are written again next time.
+     */
+    class Pending {
+        private final Map<String, String> fingerprintsByPath = new HashMap<>();
+
+        private Pending() {}
+
+        void add(String path, String fingerprint) {
+            fingerprintsByPath.put(path, fingerprint);
+        }
+
+        /**
+         * Call only once the batch has been committed
+         */
+        void committed() {
+            fingerprintsByPath.forEach(PublishedFingerprints.this::published);
+        }
+    }
+
+    /**
+     * Seeds the fingerprint of a document that was read, if it has one stored
+     */
+    void read(DocumentSnapshot snapshot) {
+        if (snapshot.exists() && snapshot.get(FIELD) instanceof String stored) {
+            fingerprints.put(snapshot.getReference().getPath(), stored);
+        }
+    }
+
+    /**
+     * Feeds a document into a digest. Every value is tagged with its type, and strings and containers with their
+     * length, so different documents can't produce the same stream of bytes.
+     */
+    private static class Hasher {
+        private final MessageDigest digest;
+        private final byte[] longBytes = new byte[Long.BYTES];
+
+        private Hasher() {
+            try {
+                this.digest = MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException("SHA-256 is not available", e); // Required of every JVM
+            }
+        }
+
+        private void update(Object value) {
+            switch (value) {
+                case null -> digest.update((byte) 'n');
+                case String string -> updateString(string);
+                case Boolean bool -> {
+                    digest.update((byte) 'b');
+                    digest.update((byte) (bool ? 1 : 0));
+                }
+                case Double number -> updateDouble(number);
+                case Float number -> updateDouble(number);
+                case Number number -> updateTagged('l', number.longValue());
+                case Map<?, ?> map -> {
+                    SortedMap<String, Object> sorted = new TreeMap<>();
+                    map.forEach((key, entry) -> sorted.put(key.toString(), entry));
+                    updateTagged('m', sorted.size());
+                    sorted.forEach((key, entry) -> {
+                        updateString(key);
+                        update(entry);
+                    });
+                }
+                case List<?> list -> {
+                    updateTagged('a', list.size());
+                    list.forEach(this::update);
+                }
+                default -> updateString(value.toString());
+            }
+        }
+
+        private void updateDouble(double number) {
+            // Math.rint is NaN for NaN, and the bound keeps infinities and huge values from being clamped
+            if (number == Math.rint(number) && Math.abs(number) < 0x1p63) {
+                updateTagged('l', (long) number);
+            } else {
+                updateTagged('d', Double.doubleToLongBits(number));
+            }
+        }
+
+        private void updateString(String string) {
+            byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+            updateTagged('s', bytes.length);
+            digest.update(bytes);
+        }
+
+        private void updateTagged(char tag, long value) {
+            digest.update((byte) tag);
+            for (int i = 0; i < Long.BYTES; i++) {
+                longBytes[i] = (byte) (value >>> (8 * (Long.BYTES - 1 - i)));
+            }
+            digest.update(longBytes);
+        }
+    }
+}
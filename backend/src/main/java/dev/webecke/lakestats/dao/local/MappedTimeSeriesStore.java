@@ -0,0 +1,329 @@
+package dev.webecke.lakestats.dao.local;
+
+import dev.webecke.lakestats.dao.DataAccessException;
+import dev.webecke.lakestats.model.TimeSeriesData;
+import dev.webecke.lakestats.model.measurements.DataType;
+import dev.webecke.lakestats.service.LakeStatsLogger;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+/**
+ * Persistent local store of each lake's time series, one memory-mapped file per lake and {@link DataType}. <br/>
+ * A file is a 16 byte header (magic, version, entry count, generation) followed by fixed-width 8 byte records of
+ * epoch-day (int) and value (float), sorted by date. New days are appended in place and the entry count in the
+ * header is only bumped once they are written, so a torn write is never visible. <br/>
+ * The mapping is what keeps merges cheap: new days are appended and revised days are overwritten in place, so a
+ * merge only touches the records it changes. Reads are not served from the mapping, a series is copied into a
+ * {@link TimeSeriesData} on the heap once per change and kept there until a merge changes it. <br/>
+ * Several instances may share the directory (for example on an NFS volume). Merges hold an exclusive file lock and
+ * reads a shared one, and every merge that changes a file bumps the generation in its header, so a series copied
+ * by one instance is read again once another instance has changed it. Locks only hold on file systems that
+ * support them, which rules out Cloud Storage FUSE mounts (see deployment.md). <br/>
+ * The directory defaults to one under the temp directory, which doesn't survive a restart on Cloud Run. The store
+ * then starts empty and the next run fetches each lake's full history, so this is allowed, but a warning is logged.
+ */
+@Component
+public class MappedTimeSeriesStore {
+    /**
+     * Returned by {@link #lastEpochDay} when nothing is stored for a series yet
+     */
+    public static final int EMPTY = Integer.MIN_VALUE;
+
+    private static final int MAGIC = 0x4C4B5453; // "LKTS"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 16;
+    private static final int RECORD_BYTES = 8;
+    private static final int VERSION_OFFSET = 4;
+    private static final int COUNT_OFFSET = 8;
+    private static final int GENERATION_OFFSET = 12;
+    private static final Pattern SAFE_LAKE_ID = Pattern.compile("[A-Za-z0-9_-]+");
+
+    private final LakeStatsLogger logger = new LakeStatsLogger(MappedTimeSeriesStore.class);
+    private final Path directory;
+    private final Map<SeriesKey, Object> locks = new ConcurrentHashMap<>();
+    private final Map<SeriesKey, LoadedSeries> loadedSeries = new ConcurrentHashMap<>();
+
+    private record SeriesKey(String lakeId, DataType type) {}
+
+    /**
+     * A series copied onto the heap, and the generation of the file it was copied from
+     */
+    private record LoadedSeries(TimeSeriesData series, int generation) {}
+
+    /**
+     * @param count number of records, 0 for an empty file
+     */
+    private record Header(int count, int generation) {}
+
+    public MappedTimeSeriesStore(@Value("${app.store.dir}") String directory) {
+        if (directory == null || directory.isBlank()) {
+            throw new IllegalArgumentException("app.store.dir must be set");
+        }
+        this.directory = Path.of(directory);
+        if (isInTempDirectory(this.directory)) {
+            logger.warn("Time series store is in the temp directory (%s), which may not survive a restart. Set LAKESTATS_DATA_DIR to keep it.".formatted(directory));
+        }
+    }
+
+    /**
+     * @return the last day stored for the series as an epoch-day, or {@link #EMPTY} if nothing is stored
+     */
+    public int lastEpochDay(String lakeId, DataType type) throws DataAccessException {
+        SeriesKey key = new SeriesKey(lakeId, type);
+        synchronized (lockFor(key)) {
+            Path path = pathFor(key);
+            if (!Files.exists(path)) { return EMPTY; }
+
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+                 FileLock fileLock = channel.lock(0, Long.MAX_VALUE, true)) {
+                Header header = readHeader(channel, path);
+                if (header == null || header.count() == 0) { return EMPTY; }
+
+                LoadedSeries loaded = loadedSeries.get(key);
+                if (loaded != null && loaded.generation() == header.generation()) {
+                    return loaded.series().epochDayAt(loaded.series().size() - 1);
+                }
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, recordOffset(header.count() - 1), RECORD_BYTES);
+                return buffer.getInt(0);
+            } catch (IOException e) {
+                throw new DataAccessException("Failed to read %s series for %s".formatted(type, lakeId), e);
+            }
+        }
+    }
+
+    /**
+     * Merges entries into the stored series. Entries after the last stored day are appended. Entries for days that
+     * are already stored overwrite the stored value, so upstream revisions to recent days are picked up. Entries for
+     * days before the first stored day, or that fall in a gap in the stored series, are ignored.
+     * @param epochDays the days to merge, in any order. If a day appears more than once, its last value is kept.
+     * @param values the value for each day, parallel to <code>epochDays</code>
+     * @return the number of entries appended
+     * @throws IllegalArgumentException if the arrays differ in length
+     */
+    public int merge(String lakeId, DataType type, int[] epochDays, float[] values) throws DataAccessException {
+        if (epochDays.length != values.length) {
+            throw new IllegalArgumentException("Column length mismatch: %d dates but %d values".formatted(epochDays.length, values.length));
+        }
+        if (!isStrictlyAscending(epochDays)) {
+            // The file must stay sorted with one record per day, so the input is put in that shape first
+            int[] sortedDays = epochDays.clone();
+            float[] sortedValues = values.clone();
+            int distinct = sortAndDeduplicate(sortedDays, sortedValues);
+            epochDays = Arrays.copyOf(sortedDays, distinct);
+            values = Arrays.copyOf(sortedValues, distinct);
+        }
+        SeriesKey key = new SeriesKey(lakeId, type);
+
+        synchronized (lockFor(key)) {
+            Path path = pathFor(key);
+            try {
+                Files.createDirectories(path.getParent());
+                try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+                     FileLock fileLock = channel.lock()) {
+                    Header header = readHeader(channel, path);
+                    if (header == null) {
+                        channel.truncate(0);
+                        header = new Header(0, 0);
+                    }
+                    int count = header.count();
+                    int nextGeneration = header.generation() + 1;
+
+                    MappedByteBuffer existing = count == 0 ? null
+                            : channel.map(FileChannel.MapMode.READ_WRITE, 0, recordOffset(count));
+                    int lastDay = count == 0 ? EMPTY : existing.getInt(recordOffset(count - 1));
+
+                    int firstNew = 0;
+                    boolean revised = false;
+                    while (firstNew < epochDays.length && epochDays[firstNew] <= lastDay) {
+                        int index = indexOf(existing, count, epochDays[firstNew]);
+                        if (index >= 0) {
+                            existing.putFloat(recordOffset(index) + Integer.BYTES, values[firstNew]);
+                            revised = true;
+                        }
+                        firstNew++;
+                    }
+
+                    int appended = epochDays.length - firstNew;
+                    if (appended > 0) {
+                        int newCount = count + appended;
+                        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, recordOffset(newCount));
+                        for (int i = firstNew; i < epochDays.length; i++) {
+                            int offset = recordOffset(count + i - firstNew);
+                            buffer.putInt(offset, epochDays[i]);
+                            buffer.putFloat(offset + Integer.BYTES, values[i]);
+                        }
+                        buffer.force();
+
+                        // Publishing the new count is what makes the appended records part of the series
+                        buffer.putInt(0, MAGIC);
+                        buffer.putInt(VERSION_OFFSET, VERSION);
+                        buffer.putInt(COUNT_OFFSET, newCount);
+                        buffer.putInt(GENERATION_OFFSET, nextGeneration);
+                        buffer.force();
+                    } else if (revised) {
+                        existing.force();
+                        existing.putInt(GENERATION_OFFSET, nextGeneration);
+                        existing.force();
+                    }
+
+                    loadedSeries.remove(key);
+                    return appended;
+                }
+            } catch (IOException e) {
+                throw new DataAccessException("Failed to store %s series for %s".formatted(type, lakeId), e);
+            }
+        }
+    }
+
+    /**
+     * @return the stored series, or null if nothing is stored for it
+     */
+    public TimeSeriesData read(String lakeId, DataType type) throws DataAccessException {
+        SeriesKey key = new SeriesKey(lakeId, type);
+        synchronized (lockFor(key)) {
+            Path path = pathFor(key);
+            if (!Files.exists(path)) { return null; }
+
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+                 FileLock fileLock = channel.lock(0, Long.MAX_VALUE, true)) {
+                Header header = readHeader(channel, path);
+                if (header == null || header.count() == 0) { return null; }
+
+                // Only the header is read while the copy is current, the records are copied again once it isn't
+                LoadedSeries loaded = loadedSeries.get(key);
+                if (loaded != null && loaded.generation() == header.generation()) { return loaded.series(); }
+
+                int count = header.count();
+
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, recordOffset(count));
+                int[] epochDays = new int[count];
+                float[] values = new float[count];
+                for (int i = 0; i < count; i++) {
+                    int offset = recordOffset(i);
+                    epochDays[i] = buffer.getInt(offset);
+                    values[i] = buffer.getFloat(offset + Integer.BYTES);
+                }
+
+                TimeSeriesData series = TimeSeriesData.fromColumns(lakeId, type, epochDays, values);
+                loadedSeries.put(key, new LoadedSeries(series, header.generation()));
+                return series;
+            } catch (IOException e) {
+                throw new DataAccessException("Failed to read %s series for %s".formatted(type, lakeId), e);
+            }
+        }
+    }
+
+    /**
+     * @return the file's header, an empty one for an empty file, or null if the file is not a valid series file
+     */
+    private Header readHeader(FileChannel channel, Path path) throws IOException {
+        long size = channel.size();
+        if (size == 0) { return new Header(0, 0); }
+        if (size < HEADER_BYTES) {
+            logger.warn(() -> "Ignoring truncated series file %s".formatted(path));
+            return null;
+        }
+
+        MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_BYTES);
+        int count = header.getInt(COUNT_OFFSET);
+        if (header.getInt(0) != MAGIC || header.getInt(VERSION_OFFSET) != VERSION || count < 0 || recordOffset(count) > size) {
+            logger.warn(() -> "Ignoring unrecognized series file %s".formatted(path));
+            return null;
+        }
+        // Files written before the generation was added have 0 here, which works as their first generation
+        return new Header(count, header.getInt(GENERATION_OFFSET));
+    }
+
+    private static int indexOf(MappedByteBuffer records, int count, int epochDay) {
+        if (records == null) { return -1; }
+
+        // Stored series normally have no gaps, in which case the offset from the first day is the index
+        long guess = (long) epochDay - records.getInt(HEADER_BYTES);
+        if (guess >= 0 && guess < count && records.getInt(recordOffset((int) guess)) == epochDay) {
+            return (int) guess;
+        }
+
+        int low = 0;
+        int high = count - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int midDay = records.getInt(recordOffset(mid));
+            if (midDay < epochDay) {
+                low = mid + 1;
+            } else if (midDay > epochDay) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean isStrictlyAscending(int[] epochDays) {
+        for (int i = 1; i < epochDays.length; i++) {
+            if (epochDays[i] <= epochDays[i - 1]) { return false; }
+        }
+        return true;
+    }
+
+    /**
+     * Sorts both columns by day and collapses repeated days into their last value, in place. Each day is packed
+     * with its original position into a long, so one primitive sort orders both columns and keeps repeats in input
+     * order.
+     * @return the number of distinct days, which are at the start of the arrays
+     */
+    private static int sortAndDeduplicate(int[] epochDays, float[] values) {
+        long[] keys = new long[epochDays.length];
+        for (int i = 0; i < epochDays.length; i++) {
+            keys[i] = ((long) epochDays[i] << 32) | i;
+        }
+        Arrays.sort(keys);
+
+        float[] originalValues = values.clone();
+        int distinct = 0;
+        for (long key : keys) {
+            int day = (int) (key >> 32);
+            float value = originalValues[(int) key];
+            if (distinct > 0 && epochDays[distinct - 1] == day) {
+                values[distinct - 1] = value; // A later repeat of the same day wins
+            } else {
+                epochDays[distinct] = day;
+                values[distinct] = value;
+                distinct++;
+            }
+        }
+        return distinct;
+    }
+
+    private static int recordOffset(int index) {
+        return HEADER_BYTES + index * RECORD_BYTES;
+    }
+
+    private Object lockFor(SeriesKey key) {
+        return locks.computeIfAbsent(key, k -> new Object());
+    }
+
+    private Path pathFor(SeriesKey key) {
+        if (!SAFE_LAKE_ID.matcher(key.lakeId()).matches()) {
+            throw new IllegalArgumentException("Lake id can't be used as a file name: " + key.lakeId());
+        }
+        return directory.resolve(key.lakeId()).resolve(key.type().name() + ".series");
+    }
+
+    private static boolean isInTempDirectory(Path path) {
+        Path temp = Path.of(System.getProperty("java.io.tmpdir")).toAbsolutePath().normalize();
+        return path.toAbsolutePath().normalize().startsWith(temp);
+    }
+}
@@ -0,0 +1,19 @@
+package dev.webecke.lakestats.model;
+
+import dev.webecke.lakestats.model.measurements.DataType;
+
+import java.time.ZonedDateTime;
+import java.util.Map;
+
+/**
+ * Index of a lake's calendar year archives, stored next to them.
+ * @param yearHashes SHA-256 of each archived year's content, keyed by year. A year is only republished when its
+ *                   hash changes, which in practice is just the current year.
+ * @param updatedAt when an archived year last changed
+ */
+public record ArchiveManifest(
+        String lakeId,
+        DataType dataType,
+        Map<String, String> yearHashes,
+        ZonedDateTime updatedAt
+) {}
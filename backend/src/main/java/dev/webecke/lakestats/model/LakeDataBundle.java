@@ -0,0 +1,34 @@
+package dev.webecke.lakestats.model;
+
+import dev.webecke.lakestats.model.measurements.DataType;
+
+import java.time.LocalDateTime;
+import java.util.Map;
+
+/**
+ * Every data type collected for a lake in a single pass.
+ * @param lakeId the lake the data belongs to
+ * @param series the collected series for each type that succeeded
+ * @param failures the error for each type that failed, the other types are unaffected by it
+ * @param collectedAt when the last of the types finished
+ */
+public record LakeDataBundle(
+        String lakeId,
+        Map<DataType, TimeSeriesData> series,
+        Map<DataType, LakeStatsException> failures,
+        LocalDateTime collectedAt
+) {
+    /**
+     * @return the series for the given type
+     * @throws LakeStatsException the type's collection error, or a {@link ResultStatus#CONFIGURATION_ERROR} if the
+     *         lake has no source for the type
+     */
+    public TimeSeriesData require(DataType type) throws LakeStatsException {
+        TimeSeriesData data = series.get(type);
+        if (data != null) { return data; }
+
+        LakeStatsException failure = failures.get(type);
+        if (failure != null) { throw failure; }
+        throw new LakeStatsException("No %s data source configured for %s".formatted(type, lakeId), ResultStatus.CONFIGURATION_ERROR);
+    }
+}
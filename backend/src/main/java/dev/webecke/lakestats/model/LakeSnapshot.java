@@ -0,0 +1,47 @@
+package dev.webecke.lakestats.model;
+
+import dev.webecke.lakestats.model.features.CurrentConditions;
+import dev.webecke.lakestats.model.geography.Lake;
+
+import java.time.ZonedDateTime;
+
+/**
+ * Everything the lake page needs, in one document, so it can be shown after a single read. It is a copy of the
+ * lake's other documents, published in the same batch as them. <br/>
+ * Settings and lake details also change outside of collection runs (and a disabled lake never runs), so their
+ * copies here can be stale. Readers use them for the first paint only, and revalidate against the lake's own
+ * documents in the background. <br/>
+ * Readers should check <code>schemaVersion</code> and fall back to the individual documents when it is newer than
+ * they understand. Bump {@link #SCHEMA_VERSION} whenever a change would break an existing reader.
+ * @param publishedAt when the run that last changed the snapshot published it
+ * @param settings the lake's settings as of that run
+ * @param lake the lake's details as of that run
+ * @param past365Days null when the lake didn't have {@link dev.webecke.lakestats.model.features.LakeSystemFeatures#PREVIOUS_YEAR_GRAPH}
+ *                    at the time of that run
+ */
+public record LakeSnapshot(
+        int schemaVersion,
+        String lakeId,
+        ZonedDateTime publishedAt,
+        LakeSystemSettings settings,
+        Lake lake,
+        CurrentConditions currentConditions,
+        HistoricalPeriodData past365Days
+) {
+    // 2: settings and lake were removed
+    // 3: settings and lake are back, as first paint copies that readers revalidate
+    public static final int SCHEMA_VERSION = 3;
+
+    public static LakeSnapshot create(LakeSystemSettings settings, Lake lake, CurrentConditions currentConditions,
+                                      HistoricalPeriodData past365Days) {
+        return new LakeSnapshot(
+                SCHEMA_VERSION,
+                lake.id(),
+                ZonedDateTime.now(),
+                settings,
+                lake,
+                currentConditions,
+                past365Days
+        );
+    }
+}
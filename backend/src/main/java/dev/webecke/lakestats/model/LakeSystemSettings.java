@@ -10,7 +10,8 @@ public record LakeSystemSettings(
         String brandedName,
         Status status,
         String accentColor,
-        List<LakeSystemFeatures> features
+        List<LakeSystemFeatures> features,
+        Integer sortOrder
 ) {
     public enum Status {
         ENABLED,
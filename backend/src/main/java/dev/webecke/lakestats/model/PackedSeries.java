@@ -0,0 +1,25 @@
+package dev.webecke.lakestats.model;
+
+import java.time.LocalDate;
+
+/**
+ * Compact form of a run of consecutive daily values, used in place of a list of {@link TimeSeriesData.TimeSeriesEntry}
+ * maps when a {@link HistoricalPeriodData} is stored. <br/>
+ * The values are quantized to fixed point (<code>round(value * scale)</code>), the first is stored as is and every
+ * other one as the difference from the one before it, each as a zigzag varint. The bytes are then base64 encoded.
+ * Entry <code>i</code> is dated <code>startDate + i</code> days.
+ * @param encoding format of <code>values</code>, so it can change without breaking older readers
+ * @param scale the fixed point scale, 100 keeps two decimals
+ * @param startDate date of the first value
+ * @param dayCount number of values
+ * @param values the packed values, base64 encoded
+ */
+public record PackedSeries(
+        String encoding,
+        int scale,
+        LocalDate startDate,
+        int dayCount,
+        String values
+) {
+    public static final String DELTA_VARINT_V1 = "delta-varint-v1";
+}
@@ -8,6 +8,7 @@ import java.time.ZonedDateTime;
 
 /**
  * Result of running collectors for a specific lake.
+ * @param profile stage timings for the run and the lake's timing baseline, null if the run never started collecting
  */
 public record RunLakeCollectorResult(
         ZonedDateTime timestamp,
@@ -16,7 +17,8 @@ public record RunLakeCollectorResult(
         ResultStatus status,
         String message,
         long durationInMillis,
-        LakeSystemFeatures[] featuresRun
+        LakeSystemFeatures[] featuresRun,
+        RunProfile profile
 ) {
     public boolean success() {
         return status == ResultStatus.SUCCESS;
@@ -0,0 +1,32 @@
+package dev.webecke.lakestats.model;
+
+/**
+ * Where the time went in a lake's run, and how it compares with the lake's recent runs. <br/>
+ * Durations are in milliseconds, measured with <code>System.nanoTime()</code>. Parsing done while the body streams
+ * in is taken out of the fetch and counted towards parsing. <br/>
+ * The prepare stage covers preparing the documents for publication (serializing and fingerprinting them). The
+ * commit itself isn't a stage, since this profile is committed along with them; its latency is in the
+ * <code>lakestats.firestore</code> metric instead.
+ * @param totalMillis the whole run, from after the last run check to the run result
+ * @param baselineMillis moving average of <code>totalMillis</code> over the lake's recent runs, not counting
+ *                       regressed runs. 0 until the lake has a run that collected data.
+ * @param baselineRuns number of runs the baseline is made of
+ * @param regressionStreak number of consecutive regressed runs, once it gets long enough the baseline starts over
+ * @param regression whether this run took more than <code>app.collection.regression-factor</code> times the baseline
+ */
+public record RunProfile(
+        StageTiming fetch,
+        StageTiming parse,
+        StageTiming aggregate,
+        StageTiming prepare,
+        double totalMillis,
+        long bytesDownloaded,
+        double baselineMillis,
+        int baselineRuns,
+        int regressionStreak,
+        boolean regression
+) {
+    public record StageTiming(
+            double millis
+    ) {}
+}
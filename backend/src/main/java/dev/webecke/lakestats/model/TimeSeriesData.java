@@ -3,39 +3,236 @@ package dev.webecke.lakestats.model;
 import dev.webecke.lakestats.model.measurements.DataType;
 
 import java.time.LocalDate;
+import java.util.AbstractList;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
-import java.util.stream.Collectors;
+import java.util.RandomAccess;
 
 /**
- * Stores time series data
- * @param lakeId the name of the lakeId this data came from
- * @param chronologicalData an ordered list (newest entries first) of daily data entries
- * @param dateIndex the same data as 'chronologicalData', but in a map to provided O(1) access to specific dates
- * @param type the type of data stored in this object
+ * Stores time series data in two parallel columns: the date of each entry as an epoch-day, and its value.
+ * Both are sorted by date, oldest entry first. <br/>
+ * Looking up a date is O(1) when the series has no gaps (the index is just the offset from the first day), and falls
+ * back to a binary search when it does. <br/>
+ * Instances are immutable. The columns are never handed out, use the index based accessors to walk them.
  */
-public record TimeSeriesData(
-        String lakeId,
-        List<TimeSeriesEntry> chronologicalData,
-        Map<LocalDate, TimeSeriesEntry> dateIndex,
-        DataType type
-) {
+public final class TimeSeriesData {
+    private final String lakeId;
+    private final DataType type;
+    private final int[] epochDays;
+    private final float[] values;
+    // Built on first use, see rangeIndex()
+    private volatile TimeSeriesRangeIndex rangeIndex;
+
+    /**
+     * A single day of data. Only created on demand, the series itself doesn't store these.
+     */
     public record TimeSeriesEntry(
             float value,
             LocalDate date
     ) {}
 
+    /**
+     * Creates a series from a list of entries, in any order.
+     * @throws IllegalArgumentException if two entries share the same date
+     */
     public TimeSeriesData(String lakeId, List<TimeSeriesEntry> data, DataType type) {
-        this(
-                lakeId,
-                data.stream()
-                        .sorted((a, b) -> b.date().compareTo(a.date()))
-                        .toList(),
-                data.stream().collect(Collectors.toMap(
-                        TimeSeriesEntry::date,
-                        entry -> entry
-                )),
-                type
-        );
+        this(lakeId, type, toEpochDays(data), toValues(data));
+    }
+
+    private TimeSeriesData(String lakeId, DataType type, int[] epochDays, float[] values) {
+        if (epochDays.length != values.length) {
+            throw new IllegalArgumentException("Column length mismatch: %d dates but %d values".formatted(epochDays.length, values.length));
+        }
+        if (!isStrictlyAscending(epochDays)) {
+            sortByDate(epochDays, values);
+        }
+        for (int i = 1; i < epochDays.length; i++) {
+            if (epochDays[i] == epochDays[i - 1]) {
+                throw new IllegalArgumentException("Duplicate entries for %s in %s data for %s"
+                        .formatted(LocalDate.ofEpochDay(epochDays[i]), type, lakeId));
+            }
+        }
+
+        this.lakeId = lakeId;
+        this.type = type;
+        this.epochDays = epochDays;
+        this.values = values;
+    }
+
+    /**
+     * Creates a series straight from its columns, in any order. <br/>
+     * The arrays are taken over by the new series rather than copied, so the caller must not touch them afterwards.
+     * @param epochDays the date of each entry, as days since 1970-01-01
+     * @param values the value of each entry, parallel to <code>epochDays</code>
+     * @throws IllegalArgumentException if the columns differ in length, or two entries share the same date
+     */
+    public static TimeSeriesData fromColumns(String lakeId, DataType type, int[] epochDays, float[] values) {
+        return new TimeSeriesData(lakeId, type, epochDays, values);
+    }
+
+    public String lakeId() {
+        return lakeId;
+    }
+
+    public DataType type() {
+        return type;
+    }
+
+    public int size() {
+        return epochDays.length;
+    }
+
+    public boolean isEmpty() {
+        return epochDays.length == 0;
+    }
+
+    public int epochDayAt(int index) {
+        return epochDays[index];
+    }
+
+    public float valueAt(int index) {
+        return values[index];
+    }
+
+    public LocalDate dateAt(int index) {
+        return LocalDate.ofEpochDay(epochDays[index]);
+    }
+
+    public TimeSeriesEntry entryAt(int index) {
+        return new TimeSeriesEntry(values[index], LocalDate.ofEpochDay(epochDays[index]));
+    }
+
+    /**
+     * @return the most recent entry in the series
+     */
+    public TimeSeriesEntry latest() {
+        return entryAt(epochDays.length - 1);
+    }
+
+    /**
+     * @return the index of the given date, or -1 if the series has no entry for it
+     */
+    public int indexOf(int epochDay) {
+        if (epochDays.length == 0) { return -1; }
+
+        // Most series are one entry per day with no gaps, in which case the offset is the index
+        long offset = (long) epochDay - epochDays[0];
+        if (offset >= 0 && offset < epochDays.length && epochDays[(int) offset] == epochDay) {
+            return (int) offset;
+        }
+
+        int index = Arrays.binarySearch(epochDays, epochDay);
+        return index >= 0 ? index : -1;
+    }
+
+    public int indexOf(LocalDate date) {
+        return indexOf(Math.toIntExact(date.toEpochDay()));
+    }
+
+    /**
+     * @return the entry for the given date, or null if the series has no entry for it
+     */
+    public TimeSeriesEntry entryOn(LocalDate date) {
+        int index = indexOf(date);
+        return index < 0 ? null : entryAt(index);
+    }
+
+    /**
+     * @return the index of the first entry on or after the given date, or {@link #size()} if there are none
+     */
+    public int lowerBound(int epochDay) {
+        int index = Arrays.binarySearch(epochDays, epochDay);
+        return index >= 0 ? index : -(index + 1);
+    }
+
+    /**
+     * @return the entries from <code>fromIndex</code> (inclusive) to <code>toIndex</code> (exclusive), oldest first
+     */
+    public List<TimeSeriesEntry> entries(int fromIndex, int toIndex) {
+        TimeSeriesEntry[] entries = new TimeSeriesEntry[toIndex - fromIndex];
+        for (int i = fromIndex; i < toIndex; i++) {
+            entries[i - fromIndex] = entryAt(i);
+        }
+        return List.of(entries);
+    }
+
+    /**
+     * @return the range statistics index for this series, built the first time it is asked for
+     */
+    public TimeSeriesRangeIndex rangeIndex() {
+        TimeSeriesRangeIndex index = rangeIndex;
+        if (index == null) {
+            // Building it twice in a race is harmless, both results are identical
+            index = new TimeSeriesRangeIndex(this);
+            rangeIndex = index;
+        }
+        return index;
+    }
+
+    /**
+     * A read-only view of the series as a list, newest entries first. Entries are created as they are accessed,
+     * so prefer the index based accessors in hot loops.
+     */
+    public List<TimeSeriesEntry> chronologicalData() {
+        return new NewestFirstView();
+    }
+
+    @Override
+    public String toString() {
+        return "TimeSeriesData[lakeId=%s, type=%s, size=%d%s]".formatted(lakeId, type, size(),
+                isEmpty() ? "" : ", from=%s, to=%s".formatted(dateAt(0), dateAt(size() - 1)));
+    }
+
+    private class NewestFirstView extends AbstractList<TimeSeriesEntry> implements RandomAccess {
+        @Override
+        public TimeSeriesEntry get(int index) {
+            return entryAt(epochDays.length - 1 - index);
+        }
+
+        @Override
+        public int size() {
+            return epochDays.length;
+        }
+    }
+
+    private static boolean isStrictlyAscending(int[] epochDays) {
+        for (int i = 1; i < epochDays.length; i++) {
+            if (epochDays[i] <= epochDays[i - 1]) { return false; }
+        }
+        return true;
+    }
+
+    /**
+     * Sorts both columns by date. Each date is packed with its original position into a long,
+     * so a single primitive sort orders both columns without boxing.
+     */
+    private static void sortByDate(int[] epochDays, float[] values) {
+        long[] keys = new long[epochDays.length];
+        for (int i = 0; i < epochDays.length; i++) {
+            keys[i] = ((long) epochDays[i] << 32) | i;
+        }
+        Arrays.sort(keys);
+
+        float[] originalValues = values.clone();
+        for (int i = 0; i < keys.length; i++) {
+            epochDays[i] = (int) (keys[i] >> 32);
+            values[i] = originalValues[(int) keys[i]];
+        }
+    }
+
+    private static int[] toEpochDays(List<TimeSeriesEntry> data) {
+        int[] epochDays = new int[data.size()];
+        for (int i = 0; i < epochDays.length; i++) {
+            epochDays[i] = Math.toIntExact(data.get(i).date().toEpochDay());
+        }
+        return epochDays;
+    }
+
+    private static float[] toValues(List<TimeSeriesEntry> data) {
+        float[] values = new float[data.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = data.get(i).value();
+        }
+        return values;
     }
 }
@@ -0,0 +1,150 @@
+package dev.webecke.lakestats.model;
+
+import java.time.LocalDate;
+
+/**
+ * Precomputed index over a {@link TimeSeriesData} that answers statistics for any range of entries in O(1):
+ * prefix sums for the sum and mean, and sparse tables for the minimum and maximum. <br/>
+ * Building it is O(n log n) and it is built once per series (see {@link TimeSeriesData#rangeIndex()}), so after
+ * that every window statistic is effectively free. Date ranges are turned into index ranges first, which is
+ * O(1) for a series without gaps and a binary search otherwise.
+ */
+public final class TimeSeriesRangeIndex {
+    private final TimeSeriesData series;
+    // prefixSums[i] is the sum of the first i values, so a range sum is a single subtraction
+    private final double[] prefixSums;
+    // minTable[k][i] is the minimum of the 2^k values starting at i, same for maxTable
+    private final float[][] minTable;
+    private final float[][] maxTable;
+
+    /**
+     * Statistics for the entries in a date range
+     * @param from date of the first entry in the range
+     * @param to date of the last entry in the range (inclusive)
+     * @param count number of entries in the range
+     * @param first value of the first entry
+     * @param last value of the last entry
+     */
+    public record RangeStats(
+            LocalDate from,
+            LocalDate to,
+            int count,
+            float min,
+            float max,
+            float mean,
+            float first,
+            float last
+    ) {
+        /**
+         * @return how much the value changed from the first entry in the range to the last
+         */
+        public float netChange() {
+            return last - first;
+        }
+    }
+
+    TimeSeriesRangeIndex(TimeSeriesData series) {
+        this.series = series;
+        int size = series.size();
+
+        prefixSums = new double[size + 1];
+        for (int i = 0; i < size; i++) {
+            prefixSums[i + 1] = prefixSums[i] + series.valueAt(i);
+        }
+
+        int levels = size == 0 ? 0 : 32 - Integer.numberOfLeadingZeros(size);
+        minTable = new float[levels][];
+        maxTable = new float[levels][];
+        if (levels == 0) { return; }
+
+        minTable[0] = new float[size];
+        for (int i = 0; i < size; i++) {
+            minTable[0][i] = series.valueAt(i);
+        }
+        maxTable[0] = minTable[0];
+
+        for (int level = 1; level < levels; level++) {
+            int half = 1 << (level - 1);
+            int length = size - (1 << level) + 1;
+            float[] previousMin = minTable[level - 1];
+            float[] previousMax = maxTable[level - 1];
+            float[] min = new float[length];
+            float[] max = new float[length];
+            for (int i = 0; i < length; i++) {
+                min[i] = Math.min(previousMin[i], previousMin[i + half]);
+                max[i] = Math.max(previousMax[i], previousMax[i + half]);
+            }
+            minTable[level] = min;
+            maxTable[level] = max;
+        }
+    }
+
+    /**
+     * @return statistics for the entries dated from <code>from</code> to <code>to</code> (both inclusive),
+     *         or null if the series has no entries in that range
+     */
+    public RangeStats stats(LocalDate from, LocalDate to) {
+        int fromIndex = series.lowerBound(Math.toIntExact(from.toEpochDay()));
+        int toIndex = series.lowerBound(Math.toIntExact(to.toEpochDay()) + 1);
+        if (fromIndex >= toIndex) { return null; }
+
+        return new RangeStats(
+                series.dateAt(fromIndex),
+                series.dateAt(toIndex - 1),
+                toIndex - fromIndex,
+                min(fromIndex, toIndex),
+                max(fromIndex, toIndex),
+                mean(fromIndex, toIndex),
+                series.valueAt(fromIndex),
+                series.valueAt(toIndex - 1)
+        );
+    }
+
+    /**
+     * @return the smallest value from <code>fromIndex</code> (inclusive) to <code>toIndex</code> (exclusive)
+     */
+    public float min(int fromIndex, int toIndex) {
+        int level = levelFor(fromIndex, toIndex);
+        return Math.min(minTable[level][fromIndex], minTable[level][toIndex - (1 << level)]);
+    }
+
+    /**
+     * @return the largest value from <code>fromIndex</code> (inclusive) to <code>toIndex</code> (exclusive)
+     */
+    public float max(int fromIndex, int toIndex) {
+        int level = levelFor(fromIndex, toIndex);
+        return Math.max(maxTable[level][fromIndex], maxTable[level][toIndex - (1 << level)]);
+    }
+
+    public double sum(int fromIndex, int toIndex) {
+        checkRange(fromIndex, toIndex);
+        return prefixSums[toIndex] - prefixSums[fromIndex];
+    }
+
+    public float mean(int fromIndex, int toIndex) {
+        return (float) (sum(fromIndex, toIndex) / (toIndex - fromIndex));
+    }
+
+    /**
+     * @return the last value in the range minus the first
+     */
+    public float netChange(int fromIndex, int toIndex) {
+        checkRange(fromIndex, toIndex);
+        return series.valueAt(toIndex - 1) - series.valueAt(fromIndex);
+    }
+
+    /**
+     * Two overlapping blocks of 2^level entries cover any range, which is what makes min and max O(1)
+     */
+    private int levelFor(int fromIndex, int toIndex) {
+        checkRange(fromIndex, toIndex);
+        return 31 - Integer.numberOfLeadingZeros(toIndex - fromIndex);
+    }
+
+    private void checkRange(int fromIndex, int toIndex) {
+        if (fromIndex < 0 || toIndex > series.size() || fromIndex >= toIndex) {
+            throw new IndexOutOfBoundsException("Invalid range [%d, %d) for a series of %d entries"
+                    .formatted(fromIndex, toIndex, series.size()));
+        }
+    }
+}
@@ -3,6 +3,16 @@ package dev.webecke.lakestats.model.features;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 
+/**
+ * The lake's level today, compared with recent days and with its long-term normals for this day of the year.
+ * The normals are computed over <code>normalFirstYear</code> to <code>normalLastYear</code>, and are null when
+ * there is no history for this day of the year in that span.
+ * @param percentileRank percentage of years in the normal span that were lower than today on this day of the year
+ * @param changePastWeek change from the first reading in the past 7 days to today
+ * @param changePastMonth change from the first reading in the past 30 days to today
+ * @param lowPastMonth lowest reading in the past 30 days, including today
+ * @param highPastMonth highest reading in the past 30 days, including today
+ */
 public record CurrentConditions(
         String lakeId,
         LocalDateTime timeOfCollection,
@@ -11,5 +21,18 @@ public record CurrentConditions(
         float levelYesterday,
         float levelTwoWeeksAgo,
         float levelOneYearAgo,
-        float levelTenYearAverage
+        float levelTenYearAverage,
+        Integer normalFirstYear,
+        Integer normalLastYear,
+        Float normalAverage,
+        Float normalP10,
+        Float normalMedian,
+        Float normalP90,
+        Float recordHigh,
+        Float recordLow,
+        Float percentileRank,
+        float changePastWeek,
+        float changePastMonth,
+        float lowPastMonth,
+        float highPastMonth
 ) {}
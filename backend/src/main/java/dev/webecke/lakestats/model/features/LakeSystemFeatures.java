@@ -2,4 +2,5 @@ package dev.webecke.lakestats.model.features;
 
 public enum LakeSystemFeatures {
     PREVIOUS_YEAR_GRAPH,
+    CALENDAR_YEAR_ARCHIVE,
 }
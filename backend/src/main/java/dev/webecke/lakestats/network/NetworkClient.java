@@ -1,37 +1,185 @@
 package dev.webecke.lakestats.network;
 
-import com.fasterxml.jackson.databind.JsonNode;
+import dev.webecke.lakestats.service.LakeStatsLogger;
+import io.netty.handler.timeout.ReadTimeoutException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.lang.Nullable;
 import org.springframework.stereotype.Service;
-import org.springframework.web.reactive.function.client.ExchangeStrategies;
 import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientRequestException;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.SignalType;
+import reactor.core.scheduler.Schedulers;
+import reactor.util.retry.Retry;
 
 import java.net.URI;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
 
 @Service
 public class NetworkClient {
-    private final WebClient webClient;
+    private static final int CACHE_READ_BUFFER_SIZE = 64 * 1024;
 
-    public NetworkClient() {
-        ExchangeStrategies strategies = ExchangeStrategies.builder()
-                .codecs(configurer -> configurer
-                        .defaultCodecs()
-                        .maxInMemorySize(5 * 1024 * 1024)) // 5MB buffer size
-                .build();
+    private final WebClient webClient;
+    private final ResponseCache responseCache;
+    private final Duration requestTimeout;
+    private final int maxRetries;
+    private final Duration minRetryBackoff;
+    private final Duration maxRetryBackoff;
+    private final double retryJitter;
+    private final LakeStatsLogger logger = new LakeStatsLogger(NetworkClient.class);
 
-        this.webClient = WebClient.builder()
-                .exchangeStrategies(strategies)
-                .build();
+    public NetworkClient(WebClient upstreamWebClient,
+                         ResponseCache responseCache,
+                         @Value("${app.network.request-timeout:60s}") Duration requestTimeout,
+                         @Value("${app.network.retry.max-retries:3}") int maxRetries,
+                         @Value("${app.network.retry.min-backoff:500ms}") Duration minRetryBackoff,
+                         @Value("${app.network.retry.max-backoff:5s}") Duration maxRetryBackoff,
+                         @Value("${app.network.retry.jitter:0.5}") double retryJitter) {
+        this.webClient = upstreamWebClient;
+        this.responseCache = responseCache;
+        this.requestTimeout = requestTimeout;
+        this.maxRetries = maxRetries;
+        this.minRetryBackoff = minRetryBackoff;
+        this.maxRetryBackoff = maxRetryBackoff;
+        this.retryJitter = retryJitter;
     }
-    public JsonNode getRequest(String sourceUrl) throws NetworkException {
+
+    /**
+     * Makes a conditional GET request and hands the response body to <code>bodyConsumer</code> one buffer at a time,
+     * as it arrives. The body is never aggregated in memory, so there is no limit on its size. <br/>
+     * If a previous response for this URL is in the {@link ResponseCache}, its ETag and Last-Modified are sent as
+     * <code>If-None-Match</code> and <code>If-Modified-Since</code>. A new body is written to the cache as it arrives,
+     * but only replaces the cached one when the caller commits the returned entry. Callers should commit it once they
+     * have checked the body, and abort it otherwise: a cached body that is truncated or malformed would be answered
+     * with 304s from then on, and never be fetched again. <br/>
+     * Each buffer is released as soon as the consumer returns, so the consumer must not hold on to it.
+     * Exceptions thrown by the consumer are rethrown as-is rather than being wrapped in a {@link NetworkException}.
+     * @return the uncommitted cache entry for the new body, or null if the server answered 304 Not Modified, in which
+     * case the consumer is never called and the cached body can be replayed with {@link #streamCachedResponse} <br/>
+     * Connection failures, timeouts, 429s and 5xx responses are retried with jittered exponential backoff, but only
+     * until the first body buffer has been handed to the consumer. After that a retry would feed it the same bytes
+     * twice, so the failure is reported instead.
+     */
+    @Nullable
+    public ResponseCache.Entry streamRequestIfModified(String sourceUrl, Consumer<DataBuffer> bodyConsumer) throws NetworkException {
+        ResponseCache.CachedResponse cached = responseCache.lookup(sourceUrl);
+        AtomicBoolean bodyStarted = new AtomicBoolean(false);
         try {
-            JsonNode response = webClient.get()
+            Optional<ResponseCache.Entry> modified = webClient.get()
                     .uri(new URI(sourceUrl))
-                    .retrieve()
-                    .bodyToMono(JsonNode.class)
+                    .headers(headers -> {
+                        if (cached == null) { return; }
+                        if (cached.etag() != null) { headers.setIfNoneMatch(cached.etag()); }
+                        if (cached.lastModified() != null) { headers.set(HttpHeaders.IF_MODIFIED_SINCE, cached.lastModified()); }
+                    })
+                    .exchangeToMono(response -> {
+                        if (response.statusCode().isSameCodeAs(HttpStatus.NOT_MODIFIED)) {
+                            return response.releaseBody().thenReturn(Optional.<ResponseCache.Entry>empty());
+                        }
+                        if (response.statusCode().isError()) {
+                            return response.<Optional<ResponseCache.Entry>>createError();
+                        }
+
+                        HttpHeaders responseHeaders = response.headers().asHttpHeaders();
+                        ResponseCache.Entry cacheEntry = responseCache.begin(sourceUrl,
+                                responseHeaders.getETag(), responseHeaders.getFirst(HttpHeaders.LAST_MODIFIED));
+
+                        return response.bodyToFlux(DataBuffer.class)
+                                // Writing the cache file blocks, so keep it off the network threads
+                                .publishOn(Schedulers.boundedElastic())
+                                .doOnNext(cacheEntry::write)
+                                .doOnNext(buffer -> bodyStarted.set(true))
+                                .doOnNext(consumeAndRelease(bodyConsumer))
+                                .doOnDiscard(DataBuffer.class, DataBufferUtils::release)
+                                .doFinally(signal -> {
+                                    if (signal != SignalType.ON_COMPLETE) { cacheEntry.abort(); }
+                                })
+                                .thenReturn(Optional.of(cacheEntry));
+                    })
+                    .timeout(requestTimeout)
+                    .retryWhen(retryPolicy(sourceUrl, bodyStarted))
                     .block();
-            return response;
+            return modified == null ? null : modified.orElse(null);
+        } catch (BodyConsumerException e) {
+            throw e.consumerException();
         } catch (Exception e) {
             throw new NetworkException("Failed to fetch data from " + sourceUrl, e);
         }
     }
+
+    /**
+     * Replays the body cached by {@link #streamRequestIfModified} for this URL, in the same way as a live response.
+     * @throws NetworkException if there is no cached body for the URL, or it can't be read
+     */
+    public void streamCachedResponse(String sourceUrl, Consumer<DataBuffer> bodyConsumer) throws NetworkException {
+        ResponseCache.CachedResponse cached = responseCache.lookup(sourceUrl);
+        if (cached == null) {
+            throw new NetworkException("No cached response for " + sourceUrl);
+        }
+
+        try {
+            DataBufferUtils.read(cached.body(), DefaultDataBufferFactory.sharedInstance, CACHE_READ_BUFFER_SIZE)
+                    .doOnNext(consumeAndRelease(bodyConsumer))
+                    .then()
+                    .block();
+        } catch (BodyConsumerException e) {
+            throw e.consumerException();
+        } catch (Exception e) {
+            throw new NetworkException("Failed to read cached response for " + sourceUrl, e);
+        }
+    }
+
+    private Retry retryPolicy(String sourceUrl, AtomicBoolean bodyStarted) {
+        return Retry.backoff(maxRetries, minRetryBackoff)
+                .maxBackoff(maxRetryBackoff)
+                .jitter(retryJitter)
+                .filter(e -> !bodyStarted.get() && isTransient(e))
+                .doBeforeRetry(signal -> logger.warn("Retrying %s after attempt %d failed: %s"
+                        .formatted(sourceUrl, signal.totalRetries() + 1, signal.failure().toString())))
+                .onRetryExhaustedThrow((spec, signal) -> signal.failure());
+    }
+
+    private static boolean isTransient(Throwable e) {
+        if (e instanceof WebClientResponseException response) {
+            return response.getStatusCode().is5xxServerError() || response.getStatusCode().isSameCodeAs(HttpStatus.TOO_MANY_REQUESTS);
+        }
+        return e instanceof WebClientRequestException
+                || e instanceof TimeoutException
+                || e instanceof ReadTimeoutException;
+    }
+
+    private static Consumer<DataBuffer> consumeAndRelease(Consumer<DataBuffer> bodyConsumer) {
+        return buffer -> {
+            try {
+                bodyConsumer.accept(buffer);
+            } catch (RuntimeException e) {
+                throw new BodyConsumerException(e);
+            } finally {
+                DataBufferUtils.release(buffer);
+            }
+        };
+    }
+
+    /**
+     * Carries an exception thrown by a body consumer through the reactive pipeline, so it can be told apart from
+     * a failure of the request itself.
+     */
+    private static class BodyConsumerException extends RuntimeException {
+        BodyConsumerException(RuntimeException cause) {
+            super(cause);
+        }
+
+        RuntimeException consumerException() {
+            return (RuntimeException) getCause();
+        }
+    }
 }
@@ -0,0 +1,77 @@
+package dev.webecke.lakestats.network;
+
+import io.netty.channel.ChannelOption;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.time.Duration;
+
+/**
+ * Transport used for every upstream request. All settings live under <code>app.network</code> in
+ * application.properties.
+ */
+@Configuration
+public class NetworkConfig {
+    @Value("${app.network.max-connections:16}")
+    private int maxConnections;
+
+    @Value("${app.network.max-idle-time:30s}")
+    private Duration maxIdleTime;
+
+    @Value("${app.network.max-life-time:5m}")
+    private Duration maxLifeTime;
+
+    @Value("${app.network.pending-acquire-timeout:10s}")
+    private Duration pendingAcquireTimeout;
+
+    @Value("${app.network.connect-timeout:5s}")
+    private Duration connectTimeout;
+
+    @Value("${app.network.response-timeout:20s}")
+    private Duration responseTimeout;
+
+    @Value("${app.network.http2:true}")
+    private boolean http2;
+
+    @Value("${app.network.compression:true}")
+    private boolean compression;
+
+    /**
+     * Keep-alive pool shared by every request, so the lakes and data types collected in parallel reuse connections
+     * to the same host instead of each paying for a new TCP and TLS handshake.
+     */
+    @Bean(destroyMethod = "dispose")
+    public ConnectionProvider upstreamConnectionProvider() {
+        return ConnectionProvider.builder("upstream")
+                .maxConnections(maxConnections)
+                .maxIdleTime(maxIdleTime)
+                .maxLifeTime(maxLifeTime)
+                .pendingAcquireTimeout(pendingAcquireTimeout)
+                .evictInBackground(maxIdleTime)
+                .build();
+    }
+
+    @Bean
+    public WebClient upstreamWebClient(ConnectionProvider upstreamConnectionProvider) {
+        HttpClient httpClient = HttpClient.create(upstreamConnectionProvider)
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, Math.toIntExact(connectTimeout.toMillis()))
+                // Longest the server may go quiet, both before the response headers and between body chunks
+                .responseTimeout(responseTimeout)
+                // Sends Accept-Encoding: gzip and inflates the body before it reaches us
+                .compress(compression)
+                // HTTP/2 is negotiated over TLS (ALPN), servers without it get HTTP/1.1
+                .protocol(http2
+                        ? new HttpProtocol[]{HttpProtocol.H2, HttpProtocol.HTTP11}
+                        : new HttpProtocol[]{HttpProtocol.HTTP11});
+
+        return WebClient.builder()
+                .clientConnector(new ReactorClientHttpConnector(httpClient))
+                .build();
+    }
+}
@@ -1,6 +1,10 @@
 package dev.webecke.lakestats.network;
 
 public class NetworkException extends Exception {
+    public NetworkException(String message) {
+        super(message);
+    }
+
     public NetworkException(String message, Throwable cause) {
         super(message, cause);
     }
@@ -0,0 +1,236 @@
+package dev.webecke.lakestats.network;
+
+import dev.webecke.lakestats.service.LakeStatsLogger;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Properties;
+
+/**
+ * On-disk cache of response bodies, keyed by URL, along with the validators (ETag and Last-Modified) needed to make
+ * the next request for the same URL conditional. <br/>
+ * The cache is best effort: any I/O problem is logged and treated as a cache miss, it never fails a request. <br/>
+ * The directory defaults to one under the temp directory, which is memory-backed on Cloud Run and gone after a
+ * restart. That only costs a full download of each URL after a restart, so it is allowed, but a warning is logged.
+ */
+@Component
+public class ResponseCache {
+    private static final String URL_KEY = "url";
+    private static final String ETAG_KEY = "etag";
+    private static final String LAST_MODIFIED_KEY = "lastModified";
+
+    private final LakeStatsLogger logger = new LakeStatsLogger(ResponseCache.class);
+    private final Path directory;
+    private final boolean enabled;
+
+    public ResponseCache(@Value("${app.network.cache-dir}") String directory) {
+        if (directory == null || directory.isBlank()) {
+            throw new IllegalArgumentException("app.network.cache-dir must be set");
+        }
+        this.directory = Path.of(directory);
+        if (isInTempDirectory(this.directory)) {
+            logger.warn("Response cache is in the temp directory (%s), which may not survive a restart. Set LAKESTATS_DATA_DIR to keep it.".formatted(directory));
+        }
+        boolean created;
+        try {
+            Files.createDirectories(this.directory);
+            created = true;
+        } catch (IOException e) {
+            logger.error("Could not create response cache directory %s, responses will not be cached".formatted(directory), e);
+            created = false;
+        }
+        this.enabled = created;
+    }
+
+    /**
+     * @param body the cached response body
+     * @param etag the ETag the body was served with, if any
+     * @param lastModified the Last-Modified header the body was served with, exactly as it was sent, if any
+     */
+    public record CachedResponse(
+            Path body,
+            @Nullable String etag,
+            @Nullable String lastModified
+    ) {}
+
+    /**
+     * @return the cached response for the URL, or null if there is none or it has nothing to validate against
+     */
+    @Nullable
+    public CachedResponse lookup(String url) {
+        if (!enabled) { return null; }
+
+        String key = key(url);
+        Path metadata = metadataPath(key);
+        Path body = bodyPath(key);
+        if (!Files.exists(metadata) || !Files.exists(body)) { return null; }
+
+        Properties properties = new Properties();
+        try (Reader reader = Files.newBufferedReader(metadata, StandardCharsets.UTF_8)) {
+            properties.load(reader);
+        } catch (IOException e) {
+            logger.warn(() -> "Could not read cached response metadata for %s: %s".formatted(url, e.getMessage()));
+            return null;
+        }
+
+        String etag = properties.getProperty(ETAG_KEY);
+        String lastModified = properties.getProperty(LAST_MODIFIED_KEY);
+        if (!url.equals(properties.getProperty(URL_KEY)) || (etag == null && lastModified == null)) {
+            return null;
+        }
+        return new CachedResponse(body, etag, lastModified);
+    }
+
+    /**
+     * Starts caching a new response for the URL. The previous cached response (if any) stays in place until
+     * {@link Entry#commit()} is called, and is left untouched if the new one is aborted. <br/>
+     * Responses without any validators are not cached, since a later request could never be made conditional.
+     */
+    public Entry begin(String url, @Nullable String etag, @Nullable String lastModified) {
+        if (!enabled || (etag == null && lastModified == null)) {
+            return new Entry(url, etag, lastModified, null, null);
+        }
+
+        String key = key(url);
+        try {
+            Path temporaryBody = Files.createTempFile(directory, key, ".tmp");
+            FileChannel channel = FileChannel.open(temporaryBody, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+            return new Entry(url, etag, lastModified, temporaryBody, channel);
+        } catch (IOException e) {
+            logger.warn(() -> "Could not start caching the response for %s: %s".formatted(url, e.getMessage()));
+            return new Entry(url, etag, lastModified, null, null);
+        }
+    }
+
+    /**
+     * A response being written to the cache. Not thread safe, a response is written by one thread at a time.
+     */
+    public class Entry {
+        private final String url;
+        private final String etag;
+        private final String lastModified;
+        private final Path temporaryBody;
+        private FileChannel channel;
+
+        private Entry(String url, String etag, String lastModified, Path temporaryBody, FileChannel channel) {
+            this.url = url;
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.temporaryBody = temporaryBody;
+            this.channel = channel;
+        }
+
+        /**
+         * Appends the readable bytes of the buffer to the cached body, without consuming them from the buffer.
+         */
+        public void write(DataBuffer buffer) {
+            if (channel == null) { return; }
+            try (DataBuffer.ByteBufferIterator chunks = buffer.readableByteBuffers()) {
+                while (chunks.hasNext()) {
+                    ByteBuffer chunk = chunks.next();
+                    while (chunk.hasRemaining()) {
+                        channel.write(chunk);
+                    }
+                }
+            } catch (IOException e) {
+                logger.warn(() -> "Could not cache the response for %s: %s".formatted(url, e.getMessage()));
+                abort();
+            }
+        }
+
+        /**
+         * Replaces the previously cached response (if any) with this one. Holds a file lock while doing so, so
+         * instances sharing the directory can't pair one's body with the other's metadata.
+         */
+        public void commit() {
+            if (channel == null) { return; }
+            String key = key(url);
+            try (FileChannel lockChannel = FileChannel.open(lockPath(key), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+                 FileLock fileLock = lockChannel.lock()) {
+                channel.close();
+                channel = null;
+
+                // Drop the old metadata first, so a crash part way through leaves no metadata
+                // rather than metadata that describes the wrong body
+                Files.deleteIfExists(metadataPath(key));
+                Files.move(temporaryBody, bodyPath(key), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+                Properties properties = new Properties();
+                properties.setProperty(URL_KEY, url);
+                if (etag != null) { properties.setProperty(ETAG_KEY, etag); }
+                if (lastModified != null) { properties.setProperty(LAST_MODIFIED_KEY, lastModified); }
+
+                Path temporaryMetadata = Files.createTempFile(directory, key, ".tmp");
+                try (Writer writer = Files.newBufferedWriter(temporaryMetadata, StandardCharsets.UTF_8)) {
+                    properties.store(writer, null);
+                }
+                Files.move(temporaryMetadata, metadataPath(key), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                logger.warn(() -> "Could not cache the response for %s: %s".formatted(url, e.getMessage()));
+                abort();
+                try {
+                    Files.deleteIfExists(temporaryBody);
+                } catch (IOException ignored) {
+                    // Nothing more we can do, the next response for this URL will be cached under a new temp file
+                }
+            }
+        }
+
+        /**
+         * Throws away this response, leaving the previously cached one in place. Does nothing once committed.
+         */
+        public void abort() {
+            if (channel == null) { return; }
+            try {
+                channel.close();
+                Files.deleteIfExists(temporaryBody);
+            } catch (IOException e) {
+                logger.warn(() -> "Could not clean up partially cached response for %s: %s".formatted(url, e.getMessage()));
+            } finally {
+                channel = null;
+            }
+        }
+    }
+
+    private Path bodyPath(String key) {
+        return directory.resolve(key + ".body");
+    }
+
+    private Path metadataPath(String key) {
+        return directory.resolve(key + ".properties");
+    }
+
+    private Path lockPath(String key) {
+        return directory.resolve(key + ".lock");
+    }
+
+    private static boolean isInTempDirectory(Path path) {
+        Path temp = Path.of(System.getProperty("java.io.tmpdir")).toAbsolutePath().normalize();
+        return path.toAbsolutePath().normalize().startsWith(temp);
+    }
+
+    private static String key(String url) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(url.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(hash);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+}
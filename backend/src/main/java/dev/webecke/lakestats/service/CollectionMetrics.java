@@ -0,0 +1,125 @@
+package dev.webecke.lakestats.service;
+
+import dev.webecke.lakestats.model.ResultStatus;
+import dev.webecke.lakestats.model.measurements.DataType;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Micrometer meters for every stage of a collection run, exposed through the actuator's Prometheus endpoint. <br/>
+ * Per lake meters are tagged with <code>lake</code>, and with <code>data_type</code> where the stage is per series.
+ * Calls that aren't for a single lake (like bulk reads) are tagged <code>lake=all</code>.
+ */
+@Component
+public class CollectionMetrics {
+    public static final String ALL_LAKES = "all";
+
+    private static final String UPSTREAM_FETCH = "lakestats.upstream.fetch";
+    private static final String UPSTREAM_BYTES = "lakestats.upstream.bytes";
+    private static final String PARSE = "lakestats.parse";
+    private static final String AGGREGATION = "lakestats.aggregation";
+    private static final String FIRESTORE = "lakestats.firestore";
+    private static final String FIRESTORE_SKIPPED_WRITES = "lakestats.firestore.writes.skipped";
+    private static final String RUN = "lakestats.run";
+    private static final String RUN_RESULTS = "lakestats.run.results";
+
+    private final MeterRegistry registry;
+
+    public CollectionMetrics(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    /**
+     * @param outcome how the fetch went, such as <code>modified</code>, <code>not_modified</code> or <code>error</code>
+     * @param nanos time spent waiting on the upstream, not counting time spent parsing the body as it arrived
+     */
+    public void recordFetch(String lakeId, DataType type, String outcome, long nanos, long bytes) {
+        Timer.builder(UPSTREAM_FETCH)
+                .description("Time spent fetching a series from its upstream source")
+                .tags("lake", lakeId, "data_type", type.name(), "outcome", outcome)
+                .register(registry)
+                .record(nanos, TimeUnit.NANOSECONDS);
+        DistributionSummary.builder(UPSTREAM_BYTES)
+                .description("Size of the upstream response body")
+                .baseUnit("bytes")
+                .tags("lake", lakeId, "data_type", type.name())
+                .register(registry)
+                .record(bytes);
+    }
+
+    public void recordParse(String lakeId, DataType type, long nanos) {
+        Timer.builder(PARSE)
+                .description("Time spent parsing an upstream response into a series")
+                .tags("lake", lakeId, "data_type", type.name())
+                .register(registry)
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Times one aggregator over a lake's data
+     */
+    public <T> T timeAggregation(String lakeId, String aggregator, Supplier<T> aggregation) {
+        return Timer.builder(AGGREGATION)
+                .description("Time spent in an aggregator")
+                .tags("lake", lakeId, "aggregator", aggregator)
+                .register(registry)
+                .record(aggregation);
+    }
+
+    /**
+     * Times a Firestore call from the moment it is sent until it completes, tagged with whether it failed
+     * @param operation what kind of call, such as <code>read</code>, <code>write</code> or <code>batch_commit</code>
+     * @param document which document (or kind of document) the call is for
+     */
+    public <T> CompletableFuture<T> timeFirestore(String operation, String document, String lakeId,
+                                                  Supplier<CompletableFuture<T>> call) {
+        long start = System.nanoTime();
+        return call.get().whenComplete((result, error) -> Timer.builder(FIRESTORE)
+                .description("Latency of a Firestore call")
+                .tags("operation", operation, "document", document, "lake", lakeId,
+                        "outcome", error == null ? "success" : "error")
+                .register(registry)
+                .record(System.nanoTime() - start, TimeUnit.NANOSECONDS));
+    }
+
+    /**
+     * Counts a write that was skipped because the document's content hadn't changed
+     */
+    public void countSkippedWrite(String document, String lakeId) {
+        Counter.builder(FIRESTORE_SKIPPED_WRITES)
+                .description("Firestore writes skipped because the content was unchanged")
+                .tags("document", document, "lake", lakeId)
+                .register(registry)
+                .increment();
+    }
+
+    /**
+     * Records a lake's run from start to finish, along with its result
+     */
+    public void recordRun(String lakeId, ResultStatus status, long nanos) {
+        Timer.builder(RUN)
+                .description("End to end time of a lake's collection run")
+                .tags("lake", lakeId)
+                .register(registry)
+                .record(nanos, TimeUnit.NANOSECONDS);
+        countResult(lakeId, status);
+    }
+
+    /**
+     * Counts a run result, for runs that never got as far as being timed
+     */
+    public void countResult(String lakeId, ResultStatus status) {
+        Counter.builder(RUN_RESULTS)
+                .description("Results of lake collection runs, by status")
+                .tags("lake", lakeId, "status", status.name())
+                .register(registry)
+                .increment();
+    }
+}
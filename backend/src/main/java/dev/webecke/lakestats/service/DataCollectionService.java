@@ -3,51 +3,150 @@ package dev.webecke.lakestats.service;
 import dev.webecke.lakestats.aggregator.CurrentConditionsAggregator;
 import dev.webecke.lakestats.aggregator.HistoricalDataAggregator;
 import dev.webecke.lakestats.collector.BureauOfReclamationDataCollector;
+import dev.webecke.lakestats.dao.AsyncDatabaseAccess;
 import dev.webecke.lakestats.dao.DataAccessException;
 import dev.webecke.lakestats.dao.DatabaseAccess;
+import dev.webecke.lakestats.dao.LakePublicationBatch;
 import dev.webecke.lakestats.model.*;
 import dev.webecke.lakestats.model.features.CurrentConditions;
 import dev.webecke.lakestats.model.features.LakeSystemFeatures;
 import dev.webecke.lakestats.model.geography.Lake;
 import dev.webecke.lakestats.model.measurements.DataType;
+import dev.webecke.lakestats.utils.SingleFlight;
+import dev.webecke.lakestats.utils.StageProfiler;
 import dev.webecke.lakestats.utils.SystemTimer;
+import io.perfmark.Link;
+import io.perfmark.PerfMark;
+import io.perfmark.TaskCloseable;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.time.*;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
 
 @Service
 public class DataCollectionService {
+    private static final String SYSTEM_RUN_KEY = "all-lakes";
+
     private final BureauOfReclamationDataCollector bureauOfReclamationDataCollector;
     private final CurrentConditionsAggregator currentConditionsAggregator;
     private final DatabaseAccess databaseAccess;
+    private final AsyncDatabaseAccess asyncDatabaseAccess;
     private final LakeStatsLogger logger = new LakeStatsLogger(DataCollectionService.class);
     private final HistoricalDataAggregator historicalDataAggregator;
+    private final CollectionMetrics metrics;
+    private final LakeReadCache readCache;
+    private final int maxParallelism;
+    private final boolean collectAllDataTypes;
+    private final double regressionFactor;
+    // Concurrent requests for a run that is already in progress share its result instead of starting another
+    private final SingleFlight<String, RunSystemResult> systemRuns = new SingleFlight<>();
+    private final SingleFlight<String, RunLakeCollectorResult> lakeRuns = new SingleFlight<>();
 
     public DataCollectionService(BureauOfReclamationDataCollector bureauOfReclamationDataCollector,
                                  CurrentConditionsAggregator currentConditionsAggregator,
                                  HistoricalDataAggregator historicalDataAggregator,
-                                 DatabaseAccess databaseAccess) {
+                                 DatabaseAccess databaseAccess,
+                                 AsyncDatabaseAccess asyncDatabaseAccess,
+                                 CollectionMetrics metrics,
+                                 LakeReadCache readCache,
+                                 @Value("${app.collection.max-parallelism:4}") int maxParallelism,
+                                 @Value("${app.collection.collect-all-data-types:false}") boolean collectAllDataTypes,
+                                 @Value("${app.collection.regression-factor:3.0}") double regressionFactor) {
+        if (maxParallelism < 1) {
+            throw new IllegalArgumentException("app.collection.max-parallelism must be at least 1, got " + maxParallelism);
+        }
+        if (regressionFactor <= 1) {
+            throw new IllegalArgumentException("app.collection.regression-factor must be greater than 1, got " + regressionFactor);
+        }
         this.bureauOfReclamationDataCollector = bureauOfReclamationDataCollector;
         this.currentConditionsAggregator = currentConditionsAggregator;
         this.databaseAccess = databaseAccess;
+        this.asyncDatabaseAccess = asyncDatabaseAccess;
         this.historicalDataAggregator = historicalDataAggregator;
+        this.metrics = metrics;
+        this.readCache = readCache;
+        this.maxParallelism = maxParallelism;
+        this.collectAllDataTypes = collectAllDataTypes;
+        this.regressionFactor = regressionFactor;
     }
 
+    /**
+     * Runs the collectors for every enabled lake. Each lake runs on its own virtual thread, with at most
+     * <code>app.collection.max-parallelism</code> lakes in flight at once (set it to 1 to run lakes one at a time).
+     * Results are reported in the same order as the lake ids, regardless of the order the lakes finish in. <br/>
+     * Every lake's settings, details and last run are loaded up front in bulk, so the number of reads doesn't grow
+     * with the number of lakes. <br/>
+     * If a run is already in progress, this waits for it and returns its result rather than starting another.
+     */
     public RunSystemResult dailyDataCollection() {
+        return systemRuns.run(SYSTEM_RUN_KEY, this::runDailyDataCollection);
+    }
+
+    private RunSystemResult runDailyDataCollection() {
+        try (TaskCloseable task = PerfMark.traceTask("DataCollectionService.dailyDataCollection")) {
+            return collectAllLakes();
+        }
+    }
+
+    private RunSystemResult collectAllLakes() {
         SystemTimer timer = new SystemTimer();
-        List<String> lakeIds = databaseAccess.getAllLakeIds();
+        Map<String, LakeSystemSettings> allSettings;
+        List<String> lakeIds;
+        Map<String, Lake> lakes;
+        Map<String, RunLakeCollectorResult> lastRuns;
+        try (TaskCloseable task = PerfMark.traceTask("readLakeConfig")) {
+            allSettings = databaseAccess.getAllLakeSystemSettings();
+            lakeIds = allSettings.entrySet().stream()
+                    .filter(entry -> entry.getValue().status() != LakeSystemSettings.Status.DISABLED)
+                    .map(Map.Entry::getKey)
+                    .toList();
+
+            // Independent of each other, so both are sent before waiting on either
+            CompletableFuture<Map<String, Lake>> pendingLakes = asyncDatabaseAccess.getLakeDetailsAsync(lakeIds);
+            CompletableFuture<Map<String, RunLakeCollectorResult>> pendingLastRuns = asyncDatabaseAccess.getLastRunSummariesAsync(lakeIds);
+            lakes = pendingLakes.join();
+            lastRuns = pendingLastRuns.join();
+        }
+
+        List<Future<RunLakeCollectorResult>> pendingResults = new ArrayList<>();
+        Semaphore permits = new Semaphore(maxParallelism);
+
+        // Ties each lake's thread back to this run in the trace
+        Link link = PerfMark.linkOut();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (String lakeId : lakeIds) {
+                pendingResults.add(executor.submit(() -> {
+                    try (TaskCloseable task = PerfMark.traceTask("lakeSlot")) {
+                        PerfMark.linkIn(link);
+                        permits.acquire();
+                    }
+                    try {
+                        return collectDataForLoadedLake(lakeId, lakes.get(lakeId), allSettings.get(lakeId), lastRuns.get(lakeId));
+                    } finally {
+                        permits.release();
+                    }
+                }));
+            }
+        } // close() waits for every submitted lake to finish
+
         List<RunLakeCollectorResult> lakeCollectorResults = new ArrayList<>();
         ResultStatus worstStatusSoFar = ResultStatus.SUCCESS;
         int successCount = 0;
         int dataNotUpdatedCount = 0;
 
-        for (String lakeId : lakeIds) {
-            LakeSystemSettings settings = databaseAccess.getLakeSystemSettings(lakeId);
-            if (settings.status() == LakeSystemSettings.Status.DISABLED)  { continue; }
-
-            RunLakeCollectorResult result = collectDataForLake(lakeId);
+        for (int i = 0; i < lakeIds.size(); i++) {
+            RunLakeCollectorResult result = awaitLakeResult(lakeIds.get(i), pendingResults.get(i));
             lakeCollectorResults.add(result);
 
             // Handle status conditions and tracking
@@ -61,92 +160,184 @@ public class DataCollectionService {
             if (successCount > dataNotUpdatedCount) worstStatusSoFar = ResultStatus.SUCCESS;
         }
 
-        return new RunSystemResult(LocalDateTime.now(), worstStatusSoFar, "Data collection completed without exploding",
+        return new RunSystemResult(ZonedDateTime.now(), worstStatusSoFar, "Data collection completed without exploding",
                 timer.end(), lakeCollectorResults);
     }
 
-    public RunLakeCollectorResult collectDataForLake(String lakeId) {
-        Lake lake;
-        LakeSystemSettings settings;
+    private RunLakeCollectorResult collectDataForLoadedLake(String lakeId, Lake lake, LakeSystemSettings settings,
+                                                           RunLakeCollectorResult lastRunResult) {
+        if (lake == null || settings == null) {
+            return lakeDetailsError(lakeId, new IllegalStateException("Missing lake details or settings for " + lakeId));
+        }
+        return lakeRuns.run(lakeId, () -> collectDataForLake(lake, settings, CompletableFuture.completedFuture(lastRunResult)));
+    }
+
+    private RunLakeCollectorResult awaitLakeResult(String lakeId, Future<RunLakeCollectorResult> pendingResult) {
         try {
-            lake = databaseAccess.getLakeDetails(lakeId);
-            settings = databaseAccess.getLakeSystemSettings(lakeId);
-        } catch (Exception e) {
-            String resultMessage = "Error while getting lake details";
-            logger.errorForLake(resultMessage, lakeId, e);
+            return pendingResult.get();
+        } catch (InterruptedException | ExecutionException e) {
+            if (e instanceof InterruptedException) { Thread.currentThread().interrupt(); }
+            String resultMessage = "Unknown error while running collector";
+            logger.errorForLake(resultMessage, lakeId, e instanceof ExecutionException ? e.getCause() : e);
             return new RunLakeCollectorResult(
-                    LocalDateTime.now(),
+                    ZonedDateTime.now(),
                     null,
                     lakeId,
-                    ResultStatus.CONFIGURATION_ERROR,
+                    ResultStatus.SYSTEM_EXCEPTION,
                     resultMessage,
                     -1,
+                    null,
                     null
             );
         }
+    }
+
+    /**
+     * Runs the collectors for a single lake. If the lake is already being collected (on its own or as part of
+     * {@link #dailyDataCollection()}), this waits for that run and returns its result rather than starting another.
+     */
+    public RunLakeCollectorResult collectDataForLake(String lakeId) {
+        return lakeRuns.run(lakeId, () -> runCollectorForLake(lakeId));
+    }
+
+    private RunLakeCollectorResult runCollectorForLake(String lakeId) {
+        // The three reads don't depend on each other, so they are all sent before waiting on any of them
+        CompletableFuture<LakeSystemSettings> pendingSettings = asyncDatabaseAccess.getLakeSystemSettingsAsync(lakeId);
+        CompletableFuture<Lake> pendingLake = asyncDatabaseAccess.getLakeDetailsAsync(lakeId);
+        CompletableFuture<RunLakeCollectorResult> pendingLastRunResult = asyncDatabaseAccess.getLastRunResultAsync(lakeId);
+
+        Lake lake;
+        LakeSystemSettings settings;
+        try (TaskCloseable task = PerfMark.traceTask("readLakeConfig")) {
+            settings = pendingSettings.join();
+            lake = pendingLake.join();
+        } catch (Exception e) {
+            return lakeDetailsError(lakeId, unwrap(e));
+        }
+
+        return collectDataForLake(lake, settings, pendingLastRunResult);
+    }
 
-        return collectDataForLake(lake, settings);
+    private RunLakeCollectorResult lakeDetailsError(String lakeId, Throwable cause) {
+        String resultMessage = "Error while getting lake details";
+        logger.errorForLake(resultMessage, lakeId, cause);
+        metrics.countResult(lakeId, ResultStatus.CONFIGURATION_ERROR);
+        return new RunLakeCollectorResult(
+                ZonedDateTime.now(),
+                null,
+                lakeId,
+                ResultStatus.CONFIGURATION_ERROR,
+                resultMessage,
+                -1,
+                null,
+                null
+        );
     }
 
     public RunLakeCollectorResult collectDataForLake(Lake lake, LakeSystemSettings settings) {
-        try { /// Check if the lake has already been run today successfully
-            RunLakeCollectorResult lastRunResult = databaseAccess.getLastRunResult(lake.id());
+        return lakeRuns.run(lake.id(),
+                () -> collectDataForLake(lake, settings, asyncDatabaseAccess.getLastRunResultAsync(lake.id())));
+    }
+
+    private RunLakeCollectorResult collectDataForLake(Lake lake, LakeSystemSettings settings,
+                                                      CompletableFuture<RunLakeCollectorResult> pendingLastRunResult) {
+        try (TaskCloseable task = PerfMark.traceTask("DataCollectionService.collectDataForLake")) {
+            PerfMark.attachTag("lake", lake.id());
+            long start = System.nanoTime();
+            RunLakeCollectorResult result = runCollectors(lake, settings, pendingLastRunResult);
+            metrics.recordRun(lake.id(), result.status(), System.nanoTime() - start);
+            PerfMark.attachTag("status", result.status().name());
+            return result;
+        }
+    }
+
+    private RunLakeCollectorResult runCollectors(Lake lake, LakeSystemSettings settings,
+                                                 CompletableFuture<RunLakeCollectorResult> pendingLastRunResult) {
+        RunProfile previousProfile;
+        try (TaskCloseable task = PerfMark.traceTask("lastRunCheck")) { /// Check if the lake has already been run today successfully
+            RunLakeCollectorResult lastRunResult = pendingLastRunResult.join();
+            previousProfile = lastRunResult == null ? null : lastRunResult.profile();
             if (lastRunResult != null &&
                     lastRunResult.success() &&
                     lastRunResult.dateCollected() != null &&
                     lastRunResult.dateCollected().isEqual(LocalDate.now())){
                 return new RunLakeCollectorResult(
-                        LocalDateTime.now(),
+                        ZonedDateTime.now(),
                         lastRunResult.dateCollected(),
                         lake.id(),
                         ResultStatus.SKIPPED,
                         "Data for this lake has already been updated today at %s".formatted(lastRunResult.timestamp().toString()),
                         -1,
+                        null,
                         null
                 );
             }
-        } catch (DataAccessException e) {
-            logger.errorForLake("Unknown error while checking last run result", lake.id(), e);
+        } catch (CompletionException e) {
+            logger.errorForLake("Unknown error while checking last run result", lake.id(), unwrap(e));
             return new RunLakeCollectorResult(
-                    LocalDateTime.now(),
+                    ZonedDateTime.now(),
                     null,
                     lake.id(),
                     ResultStatus.SYSTEM_EXCEPTION,
                     "Unknown error while checking last run result",
                     -1,
+                    null,
                     null
             );
         }
 
-        logger.infoForLake("Running collector for lake %s".formatted(lake.id()), lake.id());
+        logger.infoForLake(() -> "Running collector for lake %s".formatted(lake.id()), lake.id());
 
         SystemTimer timer = new SystemTimer();
+        StageProfiler profiler = new StageProfiler();
         ResultStatus status;
         String resultMessage = "Data collection completed and successfully published";
         LocalDate dateCollected = null;
         List<LakeSystemFeatures> featuresRun = new ArrayList<>();
+        LakePublicationBatch publication = null;
+        // What the publication holds for the read API, which is updated once it commits
+        CurrentConditions publishedConditions = null;
+        HistoricalPeriodData publishedPast365Days = null;
 
         try {
-            CollectorResponse<TimeSeriesData> elevationData = bureauOfReclamationDataCollector.collectData(lake, DataType.ELEVATION);
-            CurrentConditions currentConditions = currentConditionsAggregator.aggregateCurrentConditions(elevationData, lake);
+            CollectorResponse<TimeSeriesData> elevationData = collectElevationData(lake, profiler);
+            CurrentConditions currentConditions;
+            try (TaskCloseable task = PerfMark.traceTask("aggregateCurrentConditions")) {
+                currentConditions = metrics.timeAggregation(lake.id(), "current_conditions", () -> profiler.time(
+                        StageProfiler.Stage.AGGREGATE,
+                        () -> currentConditionsAggregator.aggregateCurrentConditions(elevationData, lake)));
+            }
             dateCollected = currentConditions.date();
+            publishedConditions = currentConditions;
+
+            // Everything for the lake is published together once the run result is known, see below
+            LakePublicationBatch batch = databaseAccess.newPublicationBatch(lake.id());
+            publication = batch;
+            profiler.time(StageProfiler.Stage.PREPARE, () -> batch.currentConditions(currentConditions).lakeInfo(lake));
 
             if (settings.features().contains(LakeSystemFeatures.PREVIOUS_YEAR_GRAPH)) {
-                HistoricalPeriodData past365days = historicalDataAggregator.past365days(elevationData.data());
+                HistoricalPeriodData past365days;
+                try (TaskCloseable task = PerfMark.traceTask("aggregatePast365Days")) {
+                    past365days = metrics.timeAggregation(lake.id(), "past_365_days", () -> profiler.time(
+                            StageProfiler.Stage.AGGREGATE,
+                            () -> historicalDataAggregator.past365days(elevationData.data())));
+                }
                 featuresRun.add(LakeSystemFeatures.PREVIOUS_YEAR_GRAPH);
-                databaseAccess.publishPast365Days(past365days);
+                if (past365days != null) profiler.time(StageProfiler.Stage.PREPARE, () -> batch.past365Days(past365days));
+                publishedPast365Days = past365days;
             }
 
-            try {
-                databaseAccess.publishCurrentConditions(currentConditions);
-                databaseAccess.publishLakeInfo(lake);
-                status = ResultStatus.SUCCESS;
-            } catch (DataAccessException e) {
-                status = ResultStatus.PUBLICATION_ERROR;
-                resultMessage = "Error while publishing data to the database";
-                logger.errorForLake(resultMessage, lake.id(), e);
+            if (settings.features().contains(LakeSystemFeatures.CALENDAR_YEAR_ARCHIVE)) {
+                addChangedCalendarYears(batch, lake, elevationData.data(), profiler);
+                featuresRun.add(LakeSystemFeatures.CALENDAR_YEAR_ARCHIVE);
             }
 
+            // Lets the lake page load everything it needs in a single read
+            LakeSnapshot snapshot = LakeSnapshot.create(settings, lake, currentConditions, publishedPast365Days);
+            profiler.time(StageProfiler.Stage.PREPARE, () -> batch.snapshot(snapshot));
+
+            status = ResultStatus.SUCCESS;
+
             LocalDate utahToday = ZonedDateTime.now(ZoneId.of("America/Denver")).toLocalDate();
             if (dateCollected.isBefore(utahToday)) {
                 status = ResultStatus.SOURCE_DATA_NOT_UPDATED;
@@ -155,32 +346,125 @@ public class DataCollectionService {
             }
 
         } catch (LakeStatsException e) {
+            publication = null;
             status = e.getType();
             resultMessage = e.getMessage();
             logger.errorForLake(resultMessage, lake.id(), e);
         } catch (Exception e) {
+            publication = null;
             status = ResultStatus.SYSTEM_EXCEPTION;
             resultMessage = "Unknown error while collecting data";
             logger.errorForLake(resultMessage, lake.id(), e);
         }
 
-        logger.infoForLake("Collector for %s has been run in %d milliseconds with status %s".formatted(lake.id(), timer.end(), status), lake.id());
+        RunProfile profile = profiler.toProfile(timer.getElapsedNanos(), previousProfile, publication != null, regressionFactor);
+        if (profile.regression()) {
+            logger.warnForLake(() -> "Run for %s took %.0f ms, more than %.1fx its baseline of %.0f ms"
+                    .formatted(lake.id(), profile.totalMillis(), regressionFactor, profile.baselineMillis()), lake.id());
+        }
+
         RunLakeCollectorResult result = new RunLakeCollectorResult(
-                LocalDateTime.now(),
+                ZonedDateTime.now(),
                 dateCollected,
                 lake.id(),
                 status,
                 resultMessage,
                 timer.getElapsedTime(),
-                featuresRun.toArray(LakeSystemFeatures[]::new)
+                featuresRun.toArray(LakeSystemFeatures[]::new),
+                profile
         );
 
-        try {
-            databaseAccess.publishLastRunResult(result);
-        } catch (DataAccessException e) {
-            logger.errorForLake("Error while publishing last run result", lake.id(), e);
+        boolean published = false;
+        if (publication != null) {
+            // The lake's data and its run result are committed atomically, so readers never see a half-updated lake
+            try (TaskCloseable task = PerfMark.traceTask("publish")) {
+                publication.lastRunResult(result).commit();
+                published = true;
+                readCache.publishedCurrentConditions(publishedConditions);
+                if (publishedPast365Days != null) { readCache.publishedPast365Days(publishedPast365Days); }
+            } catch (DataAccessException e) {
+                resultMessage = "Error while publishing data to the database";
+                logger.errorForLake(resultMessage, lake.id(), e);
+                result = new RunLakeCollectorResult(
+                        ZonedDateTime.now(),
+                        dateCollected,
+                        lake.id(),
+                        ResultStatus.PUBLICATION_ERROR,
+                        resultMessage,
+                        timer.getElapsedTime(),
+                        result.featuresRun(),
+                        result.profile()
+                );
+            }
+        }
+
+        long durationMillis = timer.end();
+        ResultStatus finalStatus = result.status();
+        logger.infoForLake(() -> "Collector for %s has been run in %d milliseconds with status %s".formatted(lake.id(), durationMillis, finalStatus), lake.id());
+        if (!published) {
+            try (TaskCloseable task = PerfMark.traceTask("publishLastRunResult")) {
+                databaseAccess.publishLastRunResult(result);
+            } catch (DataAccessException e) {
+                logger.errorForLake("Error while publishing last run result", lake.id(), e);
+            }
         }
 
         return result;
     }
+
+    /**
+     * Adds every calendar year whose content hash differs from the one in the lake's archive manifest to the
+     * publication, along with the updated manifest. After the first run this is normally just the current year.
+     */
+    private void addChangedCalendarYears(LakePublicationBatch publication, Lake lake, TimeSeriesData data,
+                                         StageProfiler profiler) {
+        ArchiveManifest manifest;
+        try (TaskCloseable task = PerfMark.traceTask("readArchiveManifest")) {
+            manifest = databaseAccess.getArchiveManifest(lake.id());
+        }
+        Map<String, String> yearHashes = new TreeMap<>();
+        if (manifest != null && manifest.dataType() == data.type() && manifest.yearHashes() != null) {
+            yearHashes.putAll(manifest.yearHashes());
+        }
+
+        List<HistoricalDataAggregator.CalendarYearArchive> years;
+        try (TaskCloseable task = PerfMark.traceTask("aggregateCalendarYears")) {
+            years = metrics.timeAggregation(lake.id(), "calendar_years",
+                    () -> profiler.time(StageProfiler.Stage.AGGREGATE, () -> historicalDataAggregator.calendarYears(data)));
+        }
+        List<HistoricalDataAggregator.CalendarYearArchive> changedYears = HistoricalDataAggregator.changedYears(years, yearHashes);
+        for (HistoricalDataAggregator.CalendarYearArchive year : changedYears) {
+            profiler.time(StageProfiler.Stage.PREPARE, () -> publication.calendarYear(year.periodData()));
+            yearHashes.put(String.valueOf(year.year()), year.contentHash());
+        }
+
+        if (!changedYears.isEmpty()) {
+            profiler.time(StageProfiler.Stage.PREPARE, () -> publication.archiveManifest(
+                    new ArchiveManifest(lake.id(), data.type(), yearHashes, ZonedDateTime.now())));
+            logger.infoForLake(() -> "%d calendar year archive(s) changed for %s".formatted(changedYears.size(), lake.id()), lake.id());
+        }
+    }
+
+    /**
+     * Collects the lake's elevation, which is all the features use today. With
+     * <code>app.collection.collect-all-data-types</code> on, every other type the lake has a source for is collected
+     * (and stored) alongside it, at little extra cost since the types are fetched in parallel.
+     */
+    private CollectorResponse<TimeSeriesData> collectElevationData(Lake lake, StageProfiler profiler) {
+        if (!collectAllDataTypes) {
+            return bureauOfReclamationDataCollector.collectData(lake, DataType.ELEVATION, profiler);
+        }
+
+        LakeDataBundle bundle = bureauOfReclamationDataCollector.collectAllData(lake, profiler);
+        bundle.failures().forEach((type, e) -> {
+            if (type != DataType.ELEVATION) {
+                logger.warnForLake(() -> "Could not collect %s data for %s: %s".formatted(type, lake.id(), e.getMessage()), lake.id());
+            }
+        });
+        return new CollectorResponse<>(bundle.require(DataType.ELEVATION), true, bundle.collectedAt());
+    }
+
+    private static Throwable unwrap(Throwable e) {
+        return e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+    }
 }
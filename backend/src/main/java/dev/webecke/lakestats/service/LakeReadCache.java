@@ -0,0 +1,201 @@
+package dev.webecke.lakestats.service;
+
+import dev.webecke.lakestats.dao.DataAccessException;
+import dev.webecke.lakestats.dao.DatabaseAccess;
+import dev.webecke.lakestats.model.HistoricalPeriodData;
+import dev.webecke.lakestats.model.features.CurrentConditions;
+import dev.webecke.lakestats.utils.Serializer;
+import dev.webecke.lakestats.utils.SingleFlight;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * In-process copy of the documents served by the read API, kept as ready-to-send responses. The JSON body, its
+ * gzipped form and their ETags are worked out once when a document is published rather than on every request. <br/>
+ * {@link DataCollectionService} refreshes a lake's entries whenever it publishes the lake. A document that isn't
+ * cached, or was cached longer than <code>app.read-api.cache.ttl</code> ago, is read from the database, and
+ * concurrent requests for it share that read. The TTL is what keeps instances that don't run the collector current.
+ * If the read fails, an expired copy is served rather than nothing. A document that doesn't exist is cached as missing
+ * for the TTL too, so requests for made up lake ids can't turn into a database read each. <br/>
+ * The cache is bounded and evicts the least recently used document.
+ */
+@Component
+public class LakeReadCache {
+    private enum Resource {
+        CURRENT_CONDITIONS,
+        PAST_365_DAYS
+    }
+
+    private record Key(String lakeId, Resource resource) {}
+
+    /**
+     * @param response the document, or null if it doesn't exist
+     * @param cachedAt <code>System.nanoTime()</code> when the response was published or read
+     */
+    private record CacheEntry(CachedResponse response, long cachedAt) {}
+
+    /**
+     * A document ready to be sent. The two encodings are different representations, so each has its own strong ETag.
+     * @param etag strong ETag of <code>json</code>, quoted
+     * @param gzipEtag strong ETag of <code>gzipped</code>, quoted
+     */
+    public record CachedResponse(
+            byte[] json,
+            byte[] gzipped,
+            String etag,
+            String gzipEtag
+    ) {
+        static CachedResponse of(String body) {
+            byte[] json = body.getBytes(StandardCharsets.UTF_8);
+            String hash = hash(json);
+            return new CachedResponse(
+                    json,
+                    gzip(json),
+                    "\"" + hash + "\"",
+                    "\"" + hash + "-gzip\""
+            );
+        }
+    }
+
+    private final LakeStatsLogger logger = new LakeStatsLogger(LakeReadCache.class);
+    private final DatabaseAccess databaseAccess;
+    private final Serializer serializer;
+    private final long ttlNanos;
+    // Guarded by itself
+    private final Map<Key, CacheEntry> responses;
+    private final SingleFlight<Key, CachedResponse> loads = new SingleFlight<>();
+
+    public LakeReadCache(DatabaseAccess databaseAccess, Serializer serializer,
+                         @Value("${app.read-api.cache.ttl:5m}") Duration ttl,
+                         @Value("${app.read-api.cache.max-entries:512}") int maxEntries) {
+        if (ttl.isNegative() || ttl.isZero()) {
+            throw new IllegalArgumentException("app.read-api.cache.ttl must be positive, got " + ttl);
+        }
+        if (maxEntries < 1) {
+            throw new IllegalArgumentException("app.read-api.cache.max-entries must be at least 1, got " + maxEntries);
+        }
+        this.databaseAccess = databaseAccess;
+        this.serializer = serializer;
+        this.ttlNanos = ttl.toNanos();
+        this.responses = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, CacheEntry> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Replaces the cached current conditions of the lake, once they have been committed
+     */
+    public void publishedCurrentConditions(CurrentConditions conditions) {
+        put(new Key(conditions.lakeId(), Resource.CURRENT_CONDITIONS), CachedResponse.of(serializer.serialize(conditions)), System.nanoTime());
+    }
+
+    /**
+     * Replaces the cached past 365 days of the lake, once they have been committed
+     */
+    public void publishedPast365Days(HistoricalPeriodData data) {
+        put(new Key(data.lakeId(), Resource.PAST_365_DAYS), CachedResponse.of(serializer.serialize(data)), System.nanoTime());
+    }
+
+    /**
+     * @return the lake's current conditions, or null if the lake has none
+     */
+    public CachedResponse getCurrentConditions(String lakeId) {
+        return get(new Key(lakeId, Resource.CURRENT_CONDITIONS), () -> databaseAccess.getCurrentConditions(lakeId));
+    }
+
+    /**
+     * @return the lake's past 365 days, or null if the lake has none
+     */
+    public CachedResponse getPast365Days(String lakeId) {
+        return get(new Key(lakeId, Resource.PAST_365_DAYS), () -> databaseAccess.getPast365Days(lakeId));
+    }
+
+    private CachedResponse get(Key key, Supplier<Object> loader) {
+        CacheEntry fresh = fresh(key);
+        if (fresh != null) { return fresh.response(); }
+
+        return loads.run(key, () -> {
+            CacheEntry refreshedMeanwhile = fresh(key);
+            if (refreshedMeanwhile != null) { return refreshedMeanwhile.response(); }
+
+            long readStart = System.nanoTime();
+            Object document;
+            try {
+                document = loader.get();
+            } catch (DataAccessException e) {
+                CacheEntry expired = entry(key);
+                if (expired == null || expired.response() == null) { throw e; }
+                logger.warnForLake(() -> "Serving an expired copy of %s for %s, it could not be read again"
+                        .formatted(key.resource(), key.lakeId()), key.lakeId());
+                return expired.response();
+            }
+
+            return put(key, document == null ? null : CachedResponse.of(serializer.serialize(document)), readStart);
+        });
+    }
+
+    /**
+     * @return the cached entry, or null if there is none or it has expired
+     */
+    private CacheEntry fresh(Key key) {
+        CacheEntry entry = entry(key);
+        return entry == null || System.nanoTime() - entry.cachedAt() > ttlNanos ? null : entry;
+    }
+
+    private CacheEntry entry(Key key) {
+        synchronized (responses) {
+            return responses.get(key);
+        }
+    }
+
+    /**
+     * Caches the response, null meaning the document doesn't exist, unless what is cached was published after
+     * <code>cachedAt</code> and so is newer
+     * @return the response that ends up cached
+     */
+    private CachedResponse put(Key key, CachedResponse response, long cachedAt) {
+        synchronized (responses) {
+            CacheEntry existing = responses.get(key);
+            if (existing != null && existing.cachedAt() - cachedAt > 0) { return existing.response(); }
+            responses.put(key, new CacheEntry(response, cachedAt));
+            return response;
+        }
+    }
+
+    private static String hash(byte[] content) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(content);
+            // 128 bits is plenty to tell versions of a document apart
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(Arrays.copyOf(digest, 16));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    private static byte[] gzip(byte[] content) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(content.length / 4 + 64);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(content);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // Not expected, everything is in memory
+        }
+        return out.toByteArray();
+    }
+}
@@ -2,9 +2,23 @@ package dev.webecke.lakestats.service;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.slf4j.spi.LoggingEventBuilder;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
+import java.util.function.Supplier;
+
+/**
+ * Structured logging on top of SLF4J 2's fluent API. Context is attached as key-values rather than formatted into
+ * the message, and nothing is built unless the level is enabled: a disabled call costs a level check. <br/>
+ * Context objects are serialized lazily, when the appender renders the event. With the async appender in
+ * <code>logback-spring.xml</code> that happens off the calling thread, so contexts must not be changed after they
+ * are logged. Messages that have to be formatted can be passed as a {@link Supplier}, which is only called when
+ * the level is enabled.
+ */
 public class LakeStatsLogger {
+    private static final String LAKE_ID_KEY = "lakeId";
+    private static final String CONTEXT_KEY = "context";
+
     private final Logger logger;
     private static final ObjectMapper objectMapper = new ObjectMapper();
 
@@ -17,6 +31,10 @@ public class LakeStatsLogger {
         logger.info(message);
     }
 
+    public void info(Supplier<String> message) {
+        logger.atInfo().setMessage(message).log();
+    }
+
     public void error(String message) {
         logger.error(message);
     }
@@ -29,66 +47,72 @@ public class LakeStatsLogger {
         logger.debug(message);
     }
 
+    public void debug(Supplier<String> message) {
+        logger.atDebug().setMessage(message).log();
+    }
+
     public void warn(String message) {
         logger.warn(message);
     }
 
+    public void warn(Supplier<String> message) {
+        logger.atWarn().setMessage(message).log();
+    }
+
     // Structured logging with any object as context
     public void info(String message, Object context) {
-        try {
-            String contextJson = objectMapper.writeValueAsString(context);
-            logger.info("{} - context: {}", message, contextJson);
-        } catch (Exception e) {
-            logger.info(message + " (failed to serialize context)");
-        }
+        withContext(logger.atInfo(), context).setMessage(message).log();
     }
 
     public void warn(String message, Object context) {
-        try {
-            String contextJson = objectMapper.writeValueAsString(context);
-            logger.warn("{} - context: {}", message, contextJson);
-        } catch (Exception e) {
-            logger.warn(message + " (failed to serialize context)");
-        }
+        withContext(logger.atWarn(), context).setMessage(message).log();
     }
 
     public void error(String message, Object context) {
-        try {
-            String contextJson = objectMapper.writeValueAsString(context);
-            logger.error("{} - context: {}", message, contextJson);
-        } catch (Exception e) {
-            logger.error(message + " (failed to serialize context)");
-        }
+        withContext(logger.atError(), context).setMessage(message).log();
     }
 
     public void error(String message, Object context, Throwable throwable) {
-        try {
-            String contextJson = objectMapper.writeValueAsString(context);
-            logger.error("{} - context: {} - exception: {}", message, contextJson, throwable.getMessage(), throwable);
-        } catch (Exception e) {
-            logger.error(message, throwable);
-        }
+        withContext(logger.atError(), context).setMessage(message).setCause(throwable).log();
     }
 
     // Simple convenience method for lake operations
     public void infoForLake(String message, String lakeId) {
-        info(message, new LakeContext(lakeId));
+        logger.atInfo().addKeyValue(LAKE_ID_KEY, lakeId).setMessage(message).log();
+    }
+
+    public void infoForLake(Supplier<String> message, String lakeId) {
+        logger.atInfo().addKeyValue(LAKE_ID_KEY, lakeId).setMessage(message).log();
     }
 
     public void warnForLake(String message, String lakeId) {
-        warn(message, new LakeContext(lakeId));
+        logger.atWarn().addKeyValue(LAKE_ID_KEY, lakeId).setMessage(message).log();
+    }
+
+    public void warnForLake(Supplier<String> message, String lakeId) {
+        logger.atWarn().addKeyValue(LAKE_ID_KEY, lakeId).setMessage(message).log();
     }
 
     public void errorForLake(String message, String lakeId, Throwable throwable) {
-        error(message, new LakeContext(lakeId), throwable);
+        logger.atError().addKeyValue(LAKE_ID_KEY, lakeId).setMessage(message).setCause(throwable).log();
     }
 
-    // Simple context class for lake operations
-    public static class LakeContext {
-        public String lakeId;
+    private static LoggingEventBuilder withContext(LoggingEventBuilder event, Object context) {
+        // A disabled level hands back a no-op builder, which never calls toString
+        return event.addKeyValue(CONTEXT_KEY, new LazyJson(context));
+    }
 
-        public LakeContext(String lakeId) {
-            this.lakeId = lakeId;
+    /**
+     * Serializes the context only when the event is rendered
+     */
+    private record LazyJson(Object context) {
+        @Override
+        public String toString() {
+            try {
+                return objectMapper.writeValueAsString(context);
+            } catch (Exception e) {
+                return "(failed to serialize context)";
+            }
         }
     }
 }
@@ -0,0 +1,92 @@
+package dev.webecke.lakestats.utils;
+
+import dev.webecke.lakestats.model.PackedSeries;
+import dev.webecke.lakestats.model.TimeSeriesData;
+
+import java.io.ByteArrayOutputStream;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+
+/**
+ * Packs and unpacks {@link PackedSeries}. The frontend has a matching decoder in
+ * <code>shared/services/data/packed-series.ts</code>, keep the two in step.
+ */
+final class PackedSeriesCodec {
+    // USBR publishes elevations to two decimals
+    static final int DEFAULT_SCALE = 100;
+
+    private PackedSeriesCodec() {}
+
+    /**
+     * @param entries entries in ascending date order
+     * @return the packed entries, or null if they don't form a run of consecutive days and so can't be packed
+     */
+    static PackedSeries pack(List<TimeSeriesData.TimeSeriesEntry> entries, int scale) {
+        if (entries.isEmpty()) { return null; }
+
+        LocalDate startDate = entries.getFirst().date();
+        long startEpochDay = startDate.toEpochDay();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(entries.size() * 2);
+        long previous = 0;
+
+        for (int i = 0; i < entries.size(); i++) {
+            TimeSeriesData.TimeSeriesEntry entry = entries.get(i);
+            if (entry.date().toEpochDay() != startEpochDay + i) { return null; }
+
+            long quantized = Math.round((double) entry.value() * scale);
+            writeVarint(bytes, zigzag(quantized - previous));
+            previous = quantized;
+        }
+
+        return new PackedSeries(
+                PackedSeries.DELTA_VARINT_V1,
+                scale,
+                startDate,
+                entries.size(),
+                Base64.getEncoder().encodeToString(bytes.toByteArray())
+        );
+    }
+
+    static List<TimeSeriesData.TimeSeriesEntry> unpack(PackedSeries packed) {
+        if (!PackedSeries.DELTA_VARINT_V1.equals(packed.encoding())) {
+            throw new IllegalArgumentException("Unknown packed series encoding " + packed.encoding());
+        }
+
+        byte[] bytes = Base64.getDecoder().decode(packed.values());
+        List<TimeSeriesData.TimeSeriesEntry> entries = new ArrayList<>(packed.dayCount());
+        int position = 0;
+        long value = 0;
+
+        for (int i = 0; i < packed.dayCount(); i++) {
+            long encoded = 0;
+            int shift = 0;
+            byte b;
+            do {
+                if (position >= bytes.length) {
+                    throw new IllegalArgumentException("Packed series ended after %d of %d values".formatted(i, packed.dayCount()));
+                }
+                b = bytes[position++];
+                encoded |= (long) (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+
+            value += (encoded >>> 1) ^ -(encoded & 1);
+            entries.add(new TimeSeriesData.TimeSeriesEntry((float) ((double) value / packed.scale()), packed.startDate().plusDays(i)));
+        }
+        return entries;
+    }
+
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static void writeVarint(ByteArrayOutputStream bytes, long value) {
+        while ((value & ~0x7FL) != 0) {
+            bytes.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        bytes.write((int) value);
+    }
+}
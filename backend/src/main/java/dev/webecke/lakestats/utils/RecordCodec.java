@@ -0,0 +1,306 @@
+package dev.webecke.lakestats.utils;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Array;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.RecordComponent;
+import java.lang.reflect.Type;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.TemporalAccessor;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Converts records straight to and from the <code>Map&lt;String, Object&gt;</code> form that Firestore reads and
+ * writes, without going through JSON. <br/>
+ * The accessors, canonical constructor and a converter for every component are worked out once per record type
+ * and kept in a {@link ClassValue}, so encoding or decoding a record is just a walk over its components. <br/>
+ * Documents are laid out the same way the Gson based serializer laid them out, so existing documents and the
+ * frontend are unaffected: dates are ISO strings, enums are their names, null components are left out, and floats
+ * keep their decimal form (<code>3550.12f</code> is stored as <code>3550.12</code>, not <code>3550.1201171875</code>).
+ */
+final class RecordCodec {
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+
+    private static final ClassValue<RecordShape> SHAPES = new ClassValue<>() {
+        @Override
+        protected RecordShape computeValue(Class<?> type) {
+            return new RecordShape(type);
+        }
+    };
+
+    private RecordCodec() {}
+
+    static Map<String, Object> encode(Record record) {
+        return SHAPES.get(record.getClass()).encode(record);
+    }
+
+    static <T> T decode(Map<String, Object> data, Class<T> type) {
+        if (!type.isRecord()) {
+            throw new IllegalArgumentException(type.getName() + " is not a record");
+        }
+        return type.cast(SHAPES.get(type).decode(data));
+    }
+
+    /**
+     * How to read, write and construct one record type
+     */
+    private static final class RecordShape {
+        private final Class<?> type;
+        private final String[] names;
+        private final MethodHandle[] accessors;
+        private final Converter[] converters;
+        private final Object[] defaults;
+        private final MethodHandle constructor;
+
+        private RecordShape(Class<?> type) {
+            if (!type.isRecord()) {
+                throw new IllegalArgumentException(type.getName() + " is not a record");
+            }
+            this.type = type;
+            RecordComponent[] components = type.getRecordComponents();
+            this.names = new String[components.length];
+            this.accessors = new MethodHandle[components.length];
+            this.converters = new Converter[components.length];
+            this.defaults = new Object[components.length];
+            Class<?>[] parameterTypes = new Class<?>[components.length];
+
+            try {
+                for (int i = 0; i < components.length; i++) {
+                    RecordComponent component = components[i];
+                    Method accessor = component.getAccessor();
+                    accessor.setAccessible(true);
+
+                    names[i] = component.getName();
+                    accessors[i] = LOOKUP.unreflect(accessor).asType(MethodType.methodType(Object.class, Object.class));
+                    converters[i] = converterFor(component.getGenericType());
+                    defaults[i] = defaultValue(component.getType());
+                    parameterTypes[i] = component.getType();
+                }
+
+                Constructor<?> canonical = type.getDeclaredConstructor(parameterTypes);
+                canonical.setAccessible(true);
+                this.constructor = LOOKUP.unreflectConstructor(canonical)
+                        .asSpreader(Object[].class, components.length)
+                        .asType(MethodType.methodType(Object.class, Object[].class));
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalStateException("Can't access the components of " + type.getName(), e);
+            }
+        }
+
+        private Map<String, Object> encode(Object record) {
+            Map<String, Object> data = new LinkedHashMap<>(names.length * 2);
+            for (int i = 0; i < names.length; i++) {
+                Object value = read(i, record);
+                if (value != null) {
+                    data.put(names[i], converters[i].encode(value));
+                }
+            }
+            return data;
+        }
+
+        private Object decode(Map<?, ?> data) {
+            Object[] arguments = new Object[names.length];
+            for (int i = 0; i < names.length; i++) {
+                Object stored = data.get(names[i]);
+                Object value = stored == null ? null : converters[i].decode(stored);
+                arguments[i] = value == null ? defaults[i] : value;
+            }
+
+            try {
+                return (Object) constructor.invokeExact(arguments);
+            } catch (RuntimeException e) {
+                throw e;
+            } catch (Throwable t) {
+                throw new IllegalStateException("Failed to construct " + type.getName(), t);
+            }
+        }
+
+        private Object read(int component, Object record) {
+            try {
+                return (Object) accessors[component].invokeExact(record);
+            } catch (RuntimeException e) {
+                throw e;
+            } catch (Throwable t) {
+                throw new IllegalStateException("Failed to read %s.%s".formatted(type.getName(), names[component]), t);
+            }
+        }
+    }
+
+    /**
+     * Converts one kind of value between its Java form and the form stored in Firestore. Never sees nulls.
+     */
+    private interface Converter {
+        Object encode(Object value);
+        Object decode(Object stored);
+    }
+
+    private static Converter converterFor(Type type) {
+        if (type instanceof ParameterizedType parameterized && parameterized.getRawType() instanceof Class<?> raw) {
+            Type[] arguments = parameterized.getActualTypeArguments();
+            if (Collection.class.isAssignableFrom(raw)) {
+                return listConverter(converterFor(arguments[0]));
+            }
+            if (Map.class.isAssignableFrom(raw)) {
+                return mapConverter(arguments[0], converterFor(arguments[1]));
+            }
+        }
+        if (!(type instanceof Class<?> c)) {
+            throw new IllegalArgumentException("Unsupported type " + type.getTypeName());
+        }
+
+        if (c == String.class) return converter(value -> value, Object::toString);
+        if (c == boolean.class || c == Boolean.class) return converter(value -> value, stored -> stored);
+        if (c == int.class || c == Integer.class) return converter(value -> ((Number) value).longValue(), stored -> ((Number) stored).intValue());
+        if (c == long.class || c == Long.class) return converter(value -> value, stored -> ((Number) stored).longValue());
+        if (c == double.class || c == Double.class) return converter(value -> value, stored -> ((Number) stored).doubleValue());
+        if (c == float.class || c == Float.class) {
+            // Going through the shortest decimal form keeps 3550.12f as 3550.12 instead of 3550.1201171875
+            return converter(value -> Double.parseDouble(Float.toString((Float) value)), stored -> ((Number) stored).floatValue());
+        }
+        if (c == LocalDate.class) return dateConverter(DateTimeFormatter.ISO_LOCAL_DATE, LocalDate::parse);
+        if (c == LocalDateTime.class) return dateConverter(DateTimeFormatter.ISO_LOCAL_DATE_TIME, LocalDateTime::parse);
+        if (c == ZonedDateTime.class) return dateConverter(DateTimeFormatter.ISO_OFFSET_DATE_TIME, ZonedDateTime::parse);
+        if (c.isEnum()) return converter(value -> ((Enum<?>) value).name(), stored -> enumConstant(c, stored.toString()));
+        if (c.isRecord()) {
+            return converter(value -> SHAPES.get(c).encode(value), stored -> SHAPES.get(c).decode((Map<?, ?>) stored));
+        }
+        if (c.isArray()) return arrayConverter(c.getComponentType(), converterFor(c.getComponentType()));
+
+        throw new IllegalArgumentException("Unsupported type " + c.getName());
+    }
+
+    private static Converter converter(Function<Object, Object> encoder, Function<Object, Object> decoder) {
+        return new Converter() {
+            @Override
+            public Object encode(Object value) {
+                return encoder.apply(value);
+            }
+
+            @Override
+            public Object decode(Object stored) {
+                return decoder.apply(stored);
+            }
+        };
+    }
+
+    private static Converter dateConverter(DateTimeFormatter formatter, Function<String, Object> parser) {
+        return converter(
+                value -> formatter.format((TemporalAccessor) value),
+                stored -> stored.toString().isEmpty() ? null : parser.apply(stored.toString())
+        );
+    }
+
+    private static Converter listConverter(Converter elements) {
+        return converter(
+                value -> {
+                    Collection<?> collection = (Collection<?>) value;
+                    List<Object> encoded = new ArrayList<>(collection.size());
+                    for (Object element : collection) {
+                        encoded.add(element == null ? null : elements.encode(element));
+                    }
+                    return encoded;
+                },
+                stored -> {
+                    List<?> list = (List<?>) stored;
+                    List<Object> decoded = new ArrayList<>(list.size());
+                    for (Object element : list) {
+                        decoded.add(element == null ? null : elements.decode(element));
+                    }
+                    return decoded;
+                }
+        );
+    }
+
+    private static Converter arrayConverter(Class<?> componentType, Converter elements) {
+        return converter(
+                value -> {
+                    int length = Array.getLength(value);
+                    List<Object> encoded = new ArrayList<>(length);
+                    for (int i = 0; i < length; i++) {
+                        Object element = Array.get(value, i);
+                        encoded.add(element == null ? null : elements.encode(element));
+                    }
+                    return encoded;
+                },
+                stored -> {
+                    List<?> list = (List<?>) stored;
+                    Object array = Array.newInstance(componentType, list.size());
+                    for (int i = 0; i < list.size(); i++) {
+                        Object element = list.get(i) == null ? null : elements.decode(list.get(i));
+                        if (element != null || !componentType.isPrimitive()) {
+                            Array.set(array, i, element);
+                        }
+                    }
+                    return array;
+                }
+        );
+    }
+
+    /**
+     * Firestore map keys are always strings, so only string and enum keys are supported. Entries whose enum key
+     * isn't recognised are skipped.
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static Converter mapConverter(Type keyType, Converter values) {
+        boolean enumKeys = keyType instanceof Class<?> c && c.isEnum();
+        if (!enumKeys && keyType != String.class) {
+            throw new IllegalArgumentException("Unsupported map key type " + keyType.getTypeName());
+        }
+
+        return converter(
+                value -> {
+                    Map<?, ?> map = (Map<?, ?>) value;
+                    Map<String, Object> encoded = new LinkedHashMap<>(map.size() * 2);
+                    for (Map.Entry<?, ?> entry : map.entrySet()) {
+                        if (entry.getKey() == null || entry.getValue() == null) { continue; }
+                        String key = enumKeys ? ((Enum<?>) entry.getKey()).name() : (String) entry.getKey();
+                        encoded.put(key, values.encode(entry.getValue()));
+                    }
+                    return encoded;
+                },
+                stored -> {
+                    Map<?, ?> map = (Map<?, ?>) stored;
+                    Map decoded = enumKeys ? new EnumMap((Class) keyType) : new HashMap<>(map.size() * 2);
+                    for (Map.Entry<?, ?> entry : map.entrySet()) {
+                        Object key = enumKeys ? enumConstant((Class<?>) keyType, entry.getKey().toString()) : entry.getKey().toString();
+                        if (key == null || entry.getValue() == null) { continue; }
+                        decoded.put(key, values.decode(entry.getValue()));
+                    }
+                    return decoded;
+                }
+        );
+    }
+
+    /**
+     * @return the constant with the given name, or null if the enum has no such constant
+     */
+    private static Object enumConstant(Class<?> enumType, String name) {
+        for (Object constant : enumType.getEnumConstants()) {
+            if (((Enum<?>) constant).name().equals(name)) {
+                return constant;
+            }
+        }
+        return null;
+    }
+
+    private static Object defaultValue(Class<?> type) {
+        if (!type.isPrimitive()) return null;
+        if (type == boolean.class) return false;
+        if (type == char.class) return '\0';
+        return Array.get(Array.newInstance(type, 1), 0);
+    }
+}
@@ -2,6 +2,8 @@ package dev.webecke.lakestats.utils;
 
 import com.google.gson.*;
 import com.google.gson.reflect.TypeToken;
+import dev.webecke.lakestats.model.HistoricalPeriodData;
+import dev.webecke.lakestats.model.PackedSeries;
 import dev.webecke.lakestats.model.geography.Lake;
 import dev.webecke.lakestats.model.measurements.DataType;
 import org.springframework.stereotype.Service;
@@ -54,8 +56,50 @@ public class Serializer {
         return gson.fromJson(json, type);
     }
 
+    /**
+     * Converts an object to the map form stored in Firestore. Records are converted directly by {@link RecordCodec},
+     * anything else goes through JSON.
+     */
     public Map<String, Object> serializeToMap(Object object) {
+        if (object instanceof Record record) {
+            return RecordCodec.encode(record);
+        }
         Type type = new TypeToken<Map<String, Object>>(){}.getType();
         return gson.fromJson(serialize(object), type);
     }
+
+    /**
+     * Same as {@link #serializeToMap(Object)}, but with the entries replaced by a much smaller {@link PackedSeries}
+     * under <code>packed</code>. Data that isn't a run of consecutive days is left as it is.
+     */
+    public Map<String, Object> serializeToPackedMap(HistoricalPeriodData data) {
+        PackedSeries packed = PackedSeriesCodec.pack(data.data(), PackedSeriesCodec.DEFAULT_SCALE);
+        Map<String, Object> map = RecordCodec.encode(data);
+        if (packed != null) {
+            map.remove("data");
+            map.put("packed", RecordCodec.encode(packed));
+        }
+        return map;
+    }
+
+    /**
+     * Converts a map read from Firestore back into a record, the reverse of {@link #serializeToMap(Object)}.
+     * Packed {@link HistoricalPeriodData} (see {@link #serializeToPackedMap}) is unpacked transparently.
+     */
+    public <T> T deserializeFromMap(Map<String, Object> data, Class<T> type) {
+        if (type == HistoricalPeriodData.class && data.get("packed") instanceof Map<?, ?> packedMap) {
+            @SuppressWarnings("unchecked")
+            PackedSeries packed = RecordCodec.decode((Map<String, Object>) packedMap, PackedSeries.class);
+            HistoricalPeriodData withoutEntries = RecordCodec.decode(data, HistoricalPeriodData.class);
+            return type.cast(new HistoricalPeriodData(
+                    withoutEntries.lakeId(),
+                    withoutEntries.startDate(),
+                    withoutEntries.endDate(),
+                    withoutEntries.type(),
+                    withoutEntries.dataType(),
+                    PackedSeriesCodec.unpack(packed)
+            ));
+        }
+        return RecordCodec.decode(data, type);
+    }
 }
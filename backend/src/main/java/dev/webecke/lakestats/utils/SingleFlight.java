@@ -0,0 +1,45 @@
+package dev.webecke.lakestats.utils;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Coalesces concurrent calls for the same key. The first caller runs the task, and anyone who asks for the same key
+ * while it is running waits for that run and gets the same result (or exception) rather than starting another one.
+ * Once a run has finished the next call for its key starts a new one, results are not cached.
+ */
+public class SingleFlight<K, V> {
+    private final Map<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+
+    public V run(K key, Supplier<V> task) {
+        CompletableFuture<V> ours = new CompletableFuture<>();
+        CompletableFuture<V> existing = inFlight.putIfAbsent(key, ours);
+        if (existing != null) {
+            return await(existing);
+        }
+
+        try {
+            V result = task.get();
+            ours.complete(result);
+            return result;
+        } catch (RuntimeException | Error e) {
+            ours.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, ours);
+        }
+    }
+
+    private static <V> V await(CompletableFuture<V> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) { throw runtimeException; }
+            if (e.getCause() instanceof Error error) { throw error; }
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package dev.webecke.lakestats.utils;
+
+import dev.webecke.lakestats.model.RunProfile;
+
+import java.util.function.Supplier;
+
+/**
+ * Adds up the time and bytes downloaded for each stage of a lake's run, and turns them into a
+ * {@link RunProfile}. Stages can be recorded from several threads at once (data types are collected in parallel).
+ */
+public final class StageProfiler {
+    // Weight of the newest run in the moving average baseline
+    private static final double BASELINE_WEIGHT = 0.2;
+    // Runs needed before the baseline is trusted enough to flag regressions
+    private static final int MIN_BASELINE_RUNS = 3;
+    // After this many regressed runs in a row, the slowdown is taken as the new normal and the baseline starts over
+    private static final int MAX_REGRESSION_STREAK = 5;
+
+    public enum Stage {
+        FETCH,
+        PARSE,
+        AGGREGATE,
+        PREPARE
+    }
+
+    private final long[] nanos = new long[Stage.values().length];
+    private long bytesDownloaded = 0;
+
+    public synchronized void record(Stage stage, long stageNanos) {
+        nanos[stage.ordinal()] += stageNanos;
+    }
+
+    public synchronized void addBytesDownloaded(long bytes) {
+        bytesDownloaded += bytes;
+    }
+
+    /**
+     * Runs a stage on the current thread and records how long it took
+     */
+    public <T> T time(Stage stage, Supplier<T> work) {
+        long start = System.nanoTime();
+        try {
+            return work.get();
+        } finally {
+            record(stage, System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * @param previous profile of the lake's last run, or null if there wasn't one
+     * @param collected whether the run got as far as collecting data. Only those runs count towards the baseline,
+     *                  a run that failed early would drag it down.
+     * @param regressionFactor how many times slower than the baseline a run has to be to count as a regression
+     */
+    public synchronized RunProfile toProfile(long totalNanos, RunProfile previous, boolean collected, double regressionFactor) {
+        double totalMillis = toMillis(totalNanos);
+        double baselineMillis = previous == null ? 0 : previous.baselineMillis();
+        int baselineRuns = previous == null ? 0 : previous.baselineRuns();
+        int regressionStreak = previous == null ? 0 : previous.regressionStreak();
+        boolean regression = false;
+
+        if (collected) {
+            regression = baselineRuns >= MIN_BASELINE_RUNS && totalMillis > regressionFactor * baselineMillis;
+            regressionStreak = regression ? regressionStreak + 1 : 0;
+
+            if (baselineRuns == 0 || regressionStreak >= MAX_REGRESSION_STREAK) {
+                baselineMillis = totalMillis;
+                baselineRuns = 1;
+                regressionStreak = 0;
+            } else if (!regression) {
+                // Regressed runs are kept out, so a single slow run doesn't hide the next one
+                baselineMillis += BASELINE_WEIGHT * (totalMillis - baselineMillis);
+                baselineRuns++;
+            }
+        }
+
+        return new RunProfile(
+                timing(Stage.FETCH),
+                timing(Stage.PARSE),
+                timing(Stage.AGGREGATE),
+                timing(Stage.PREPARE),
+                totalMillis,
+                bytesDownloaded,
+                baselineMillis,
+                baselineRuns,
+                regressionStreak,
+                regression
+        );
+    }
+
+    private RunProfile.StageTiming timing(Stage stage) {
+        return new RunProfile.StageTiming(toMillis(nanos[stage.ordinal()]));
+    }
+
+    private static double toMillis(long nanos) {
+        return nanos / 1_000_000.0;
+    }
+}
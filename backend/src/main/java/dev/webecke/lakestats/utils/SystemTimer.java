@@ -1,12 +1,16 @@
 package dev.webecke.lakestats.utils;
 
-import java.time.Duration;
-import java.time.LocalDateTime;
-import java.util.Objects;
+import java.util.concurrent.TimeUnit;
 
+/**
+ * Measures elapsed time with {@link System#nanoTime()}, which is monotonic, so wall clock adjustments (NTP, DST)
+ * never show up as negative or inflated durations.
+ */
 public class SystemTimer {
-    private LocalDateTime startTime = null;
-    private LocalDateTime endTime = null;
+    private static final long NOT_SET = Long.MIN_VALUE;
+
+    private long startTime = NOT_SET;
+    private long endTime = NOT_SET;
 
     public SystemTimer() {
         this(true);
@@ -19,37 +23,41 @@ public class SystemTimer {
     }
 
     public void start() {
-        if (startTime != null) {
+        if (startTime != NOT_SET) {
             throw new IllegalStateException("Timer is already running.");
         }
-        startTime = LocalDateTime.now();
+        startTime = System.nanoTime();
     }
 
     public long end() {
-        if (startTime == null) {
+        if (startTime == NOT_SET) {
             throw new IllegalStateException("Timer has not been started.");
         }
-        if (endTime != null) {
+        if (endTime != NOT_SET) {
             throw new IllegalStateException("Timer has already been stopped.");
         }
-        endTime = LocalDateTime.now();
+        endTime = System.nanoTime();
 
-        return java.time.Duration.between(startTime, endTime).toMillis();
+        return TimeUnit.NANOSECONDS.toMillis(endTime - startTime);
     }
 
     public long getElapsedTime() {
-        if (startTime == null) {
+        return TimeUnit.NANOSECONDS.toMillis(getElapsedNanos());
+    }
+
+    public long getElapsedNanos() {
+        if (startTime == NOT_SET) {
             throw new IllegalStateException("Timer has not been started.");
         }
-        return Duration.between(startTime, Objects.requireNonNullElseGet(endTime, LocalDateTime::now)).toMillis();
+        return (endTime == NOT_SET ? System.nanoTime() : endTime) - startTime;
     }
 
     public void reset() {
         reset(true);
     }
     public void reset(boolean restartImmediately) {
-        startTime = null;
-        endTime = null;
+        startTime = NOT_SET;
+        endTime = NOT_SET;
         if (restartImmediately) {
             start();
         }
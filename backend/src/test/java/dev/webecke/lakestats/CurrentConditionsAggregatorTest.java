@@ -1,6 +1,121 @@
 package dev.webecke.lakestats;
 
+import dev.webecke.lakestats.aggregator.CurrentConditionsAggregator;
+import dev.webecke.lakestats.model.CollectorResponse;
+import dev.webecke.lakestats.model.TimeSeriesData;
+import dev.webecke.lakestats.model.TimeSeriesFixtures;
+import dev.webecke.lakestats.model.features.CurrentConditions;
+import dev.webecke.lakestats.model.geography.Lake;
+import dev.webecke.lakestats.model.measurements.DataType;
 import org.junit.jupiter.api.Test;
 
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Map;
+
+import static dev.webecke.lakestats.model.TimeSeriesFixtures.daily;
+import static org.junit.jupiter.api.Assertions.*;
+
 public class CurrentConditionsAggregatorTest {
+    private static final String LAKE_ID = TimeSeriesFixtures.LAKE_ID;
+    private static final Lake LAKE = new Lake(LAKE_ID, "Lake Powell", "", null, "", 3700, 3490, 3370, Map.of(), Map.of());
+    private static final LocalDateTime COLLECTED_AT = LocalDateTime.of(2024, 6, 15, 6, 0);
+
+    private final CurrentConditionsAggregator aggregator = new CurrentConditionsAggregator(30);
+
+    @Test
+    void comparesTodayWithRecentDays() {
+        // The level rises by one every day
+        LocalDate first = LocalDate.of(2020, 1, 1);
+        CurrentConditions conditions = aggregate(daily(first, LocalDate.of(2024, 6, 15),
+                date -> date.toEpochDay() - first.toEpochDay()));
+
+        assertEquals(LAKE_ID, conditions.lakeId());
+        assertEquals(COLLECTED_AT, conditions.timeOfCollection());
+        assertEquals(LocalDate.of(2024, 6, 15), conditions.date());
+        assertEquals(conditions.levelToday() - 1, conditions.levelYesterday());
+        assertEquals(conditions.levelToday() - 14, conditions.levelTwoWeeksAgo());
+        assertEquals(conditions.levelToday() - 366, conditions.levelOneYearAgo()); // 2024 is a leap year
+        assertEquals(7f, conditions.changePastWeek());
+        assertEquals(30f, conditions.changePastMonth());
+        assertEquals(conditions.levelToday() - 30, conditions.lowPastMonth());
+        assertEquals(conditions.levelToday(), conditions.highPastMonth());
+    }
+
+    @Test
+    void recentChangesStartFromTheFirstReadingInTheWindow() {
+        // Neither window has a reading on its first day, the past month's first reading is two weeks ago
+        TimeSeriesData series = TimeSeriesData.fromColumns(LAKE_ID, DataType.ELEVATION,
+                new int[]{day(2023, 6, 15), day(2024, 6, 1), day(2024, 6, 14), day(2024, 6, 15)},
+                new float[]{3500f, 3540f, 3530f, 3535f});
+        CurrentConditions conditions = aggregate(series);
+
+        assertEquals(5f, conditions.changePastWeek());
+        assertEquals(-5f, conditions.changePastMonth());
+        assertEquals(3530f, conditions.lowPastMonth());
+        assertEquals(3540f, conditions.highPastMonth());
+    }
+
+    @Test
+    void normalsCoverTheConfiguredYearsEndingLastYear() {
+        CurrentConditions conditions = aggregate(daily(LocalDate.of(1980, 1, 1), LocalDate.of(2024, 6, 15), date -> date.getYear()));
+
+        assertEquals(1994, (int) conditions.normalFirstYear());
+        assertEquals(2023, (int) conditions.normalLastYear());
+        assertEquals(2008.5f, (float) conditions.normalAverage());
+        assertEquals(1994f, (float) conditions.recordLow());
+        assertEquals(2023f, (float) conditions.recordHigh());
+        assertEquals(100f, (float) conditions.percentileRank()); // Today's value is higher than any previous year
+    }
+
+    @Test
+    void tenYearAverageUsesThePreviousTenYears() {
+        CurrentConditions conditions = aggregate(daily(LocalDate.of(1980, 1, 1), LocalDate.of(2024, 6, 15), date -> date.getYear()));
+
+        assertEquals(2018.5f, conditions.levelTenYearAverage());
+    }
+
+    @Test
+    void tenYearAverageOnFebruary29thUsesLeapYears() {
+        CurrentConditions conditions = aggregate(daily(LocalDate.of(2000, 1, 1), LocalDate.of(2024, 2, 29), date -> date.getYear()));
+
+        assertEquals(2018f, conditions.levelTenYearAverage()); // 2016 and 2020
+    }
+
+    @Test
+    void tenYearAverageUsesTheYearsThatHaveData() {
+        CurrentConditions conditions = aggregate(daily(LocalDate.of(2019, 1, 1), LocalDate.of(2024, 6, 15), date -> date.getYear()));
+
+        assertEquals(2021f, conditions.levelTenYearAverage());
+        // The normal span stays as configured, only the years with data count towards it
+        assertEquals(1994, (int) conditions.normalFirstYear());
+        assertEquals(2019f, (float) conditions.recordLow());
+    }
+
+    @Test
+    void unsuccessfulCollectionHasNoConditions() {
+        TimeSeriesData series = daily(LocalDate.of(2024, 1, 1), LocalDate.of(2024, 6, 15), date -> 3550);
+        assertNull(aggregator.aggregateCurrentConditions(new CollectorResponse<>(series, false, COLLECTED_AT), LAKE));
+    }
+
+    @Test
+    void rejectsNonElevationData() {
+        TimeSeriesData series = TimeSeriesData.fromColumns(LAKE_ID, DataType.INFLOW, new int[]{0}, new float[]{1f});
+        assertThrows(IllegalArgumentException.class,
+                () -> aggregator.aggregateCurrentConditions(new CollectorResponse<>(series, true, COLLECTED_AT), LAKE));
+    }
+
+    @Test
+    void normalsMustCoverTheTenYearAverage() {
+        assertThrows(IllegalArgumentException.class, () -> new CurrentConditionsAggregator(9));
+        assertDoesNotThrow(() -> new CurrentConditionsAggregator(10));
+    }
+
+    private CurrentConditions aggregate(TimeSeriesData series) {
+        return aggregator.aggregateCurrentConditions(new CollectorResponse<>(series, true, COLLECTED_AT), LAKE);
+    }
+
+    private static int day(int year, int month, int dayOfMonth) {
+        return Math.toIntExact(LocalDate.of(year, month, dayOfMonth).toEpochDay());
+    }
 }
@@ -0,0 +1,161 @@
+package dev.webecke.lakestats.aggregator;
+
+import dev.webecke.lakestats.model.TimeSeriesData;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+
+import static dev.webecke.lakestats.model.TimeSeriesFixtures.daily;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DayOfYearClimatologyTest {
+    @Test
+    void marchFirstLinesUpInLeapAndCommonYears() {
+        // 2023 is a common year and 2024 a leap year, March 1st is the 60th and 61st day of the year respectively
+        DayOfYearClimatology climatology = DayOfYearClimatology.build(
+                daily(LocalDate.of(2023, 1, 1), LocalDate.of(2024, 12, 31), date -> date.getYear()), 2023, 2024);
+
+        DayOfYearClimatology.DayStats stats = climatology.statsOn(LocalDate.of(2025, 3, 1));
+        assertEquals(2, stats.years());
+        assertEquals(2023.5f, stats.mean());
+        assertEquals(2023f, stats.recordLow());
+        assertEquals(2024f, stats.recordHigh());
+    }
+
+    @Test
+    void february29thIsOnlyFedByLeapYears() {
+        DayOfYearClimatology climatology = DayOfYearClimatology.build(
+                daily(LocalDate.of(2014, 1, 1), LocalDate.of(2023, 12, 31), date -> date.getDayOfMonth() == 29 ? 1000 : date.getYear()),
+                2014, 2023);
+
+        DayOfYearClimatology.DayStats leapDay = climatology.statsOn(LocalDate.of(2024, 2, 29));
+        assertEquals(2, leapDay.years()); // 2016 and 2020
+        assertEquals(1000f, leapDay.mean());
+
+        DayOfYearClimatology.DayStats dayBefore = climatology.statsOn(LocalDate.of(2024, 2, 28));
+        assertEquals(10, dayBefore.years());
+        assertEquals(2018.5f, dayBefore.mean());
+    }
+
+    @Test
+    void february29thFallsBackToThe28thWithoutLeapYears() {
+        DayOfYearClimatology climatology = DayOfYearClimatology.build(
+                daily(LocalDate.of(2021, 1, 1), LocalDate.of(2023, 12, 31), date -> date.getYear()), 2021, 2023);
+
+        DayOfYearClimatology.DayStats leapDay = climatology.statsOn(LocalDate.of(2024, 2, 29));
+        assertEquals(3, leapDay.years());
+        assertEquals(2022f, leapDay.mean());
+        assertEquals(50f, climatology.percentileRank(LocalDate.of(2024, 2, 29), 2022f));
+    }
+
+    @Test
+    void onlyReadsTheSpan() {
+        DayOfYearClimatology climatology = DayOfYearClimatology.build(
+                daily(LocalDate.of(2000, 1, 1), LocalDate.of(2024, 6, 30), date -> date.getYear()), 2010, 2019);
+
+        assertEquals(2010, climatology.firstYear());
+        assertEquals(2019, climatology.lastYear());
+        DayOfYearClimatology.DayStats stats = climatology.statsOn(LocalDate.of(2024, 6, 1));
+        assertEquals(10, stats.years());
+        assertEquals(2010f, stats.recordLow());
+        assertEquals(2019f, stats.recordHigh());
+    }
+
+    @Test
+    void percentilesInterpolateBetweenRanks() {
+        // Values 1 to 11, one per year
+        DayOfYearClimatology climatology = DayOfYearClimatology.build(
+                daily(LocalDate.of(2001, 1, 1), LocalDate.of(2011, 12, 31), date -> date.getYear() - 2000), 2001, 2011);
+
+        DayOfYearClimatology.DayStats stats = climatology.statsOn(LocalDate.of(2024, 7, 4));
+        assertEquals(2f, stats.p10(), 1e-4f);
+        assertEquals(6f, stats.p50(), 1e-4f);
+        assertEquals(10f, stats.p90(), 1e-4f);
+    }
+
+    @Test
+    void percentileRankCountsTiesAsHalf() {
+        DayOfYearClimatology climatology = DayOfYearClimatology.build(
+                daily(LocalDate.of(2001, 1, 1), LocalDate.of(2004, 12, 31), date -> date.getYear() - 2000), 2001, 2004);
+        LocalDate date = LocalDate.of(2024, 5, 5);
+
+        assertEquals(0f, climatology.percentileRank(date, 0f));
+        assertEquals(12.5f, climatology.percentileRank(date, 1f));
+        assertEquals(50f, climatology.percentileRank(date, 2.5f));
+        assertEquals(100f, climatology.percentileRank(date, 5f));
+    }
+
+    @Test
+    void daysWithoutDataHaveNoStats() {
+        DayOfYearClimatology climatology = DayOfYearClimatology.build(
+                daily(LocalDate.of(2020, 3, 1), LocalDate.of(2020, 3, 31), date -> 1), 2020, 2020);
+
+        assertNull(climatology.statsOn(LocalDate.of(2024, 4, 1)));
+        assertTrue(Float.isNaN(climatology.percentileRank(LocalDate.of(2024, 4, 1), 1f)));
+        assertNotNull(climatology.statsOn(LocalDate.of(2024, 3, 31)));
+    }
+
+    @Test
+    void meanOnPartOfTheSpan() {
+        DayOfYearClimatology climatology = DayOfYearClimatology.build(
+                daily(LocalDate.of(1994, 1, 1), LocalDate.of(2023, 12, 31), date -> date.getYear()), 1994, 2023);
+
+        DayOfYearClimatology.RangeMean mean = climatology.meanOn(LocalDate.of(2024, 6, 15), 2014, 2023);
+        assertEquals(10, mean.years());
+        assertEquals(10, mean.possibleYears());
+        assertEquals(2018.5f, mean.mean());
+
+        // Clipped to the span
+        DayOfYearClimatology.RangeMean clipped = climatology.meanOn(LocalDate.of(2024, 6, 15), 2020, 2030);
+        assertEquals(4, clipped.years());
+        assertEquals(4, clipped.possibleYears());
+        assertEquals(2021.5f, clipped.mean());
+    }
+
+    @Test
+    void meanOnFebruary29thOnlyExpectsLeapYears() {
+        DayOfYearClimatology climatology = DayOfYearClimatology.build(
+                daily(LocalDate.of(1994, 1, 1), LocalDate.of(2023, 12, 31), date -> date.getYear()), 1994, 2023);
+
+        DayOfYearClimatology.RangeMean mean = climatology.meanOn(LocalDate.of(2024, 2, 29), 2014, 2023);
+        assertEquals(2, mean.years());
+        assertEquals(2, mean.possibleYears());
+        assertEquals(2018f, mean.mean());
+
+        // No leap year from 2021 to 2023, so February 28th stands in for every year
+        DayOfYearClimatology.RangeMean fallback = climatology.meanOn(LocalDate.of(2024, 2, 29), 2021, 2023);
+        assertEquals(3, fallback.years());
+        assertEquals(3, fallback.possibleYears());
+        assertEquals(2022f, fallback.mean());
+    }
+
+    @Test
+    void meanOnCountsMissingYears() {
+        DayOfYearClimatology climatology = DayOfYearClimatology.build(
+                daily(LocalDate.of(2019, 1, 1), LocalDate.of(2023, 12, 31), date -> date.getYear()), 1994, 2023);
+
+        DayOfYearClimatology.RangeMean mean = climatology.meanOn(LocalDate.of(2024, 6, 15), 2014, 2023);
+        assertEquals(5, mean.years());
+        assertEquals(10, mean.possibleYears());
+        assertEquals(2021f, mean.mean());
+
+        DayOfYearClimatology.RangeMean none = climatology.meanOn(LocalDate.of(2024, 6, 15), 2000, 2010);
+        assertEquals(0, none.years());
+        assertTrue(Float.isNaN(none.mean()));
+    }
+
+    @Test
+    void slotOfEpochDayMatchesLocalDate() {
+        int[] monthStart = {0, 31, 60, 91, 121, 152, 182, 213, 244, 274, 305, 335};
+        for (LocalDate date = LocalDate.of(1895, 1, 1); date.isBefore(LocalDate.of(2105, 1, 1)); date = date.plusDays(1)) {
+            int expected = monthStart[date.getMonthValue() - 1] + date.getDayOfMonth() - 1;
+            assertEquals(expected, DayOfYearClimatology.slotOfEpochDay(Math.toIntExact(date.toEpochDay())), date.toString());
+        }
+    }
+
+    @Test
+    void rejectsAnInvertedSpan() {
+        TimeSeriesData series = daily(LocalDate.of(2020, 1, 1), LocalDate.of(2020, 1, 2), date -> 1);
+        assertThrows(IllegalArgumentException.class, () -> DayOfYearClimatology.build(series, 2021, 2020));
+    }
+}
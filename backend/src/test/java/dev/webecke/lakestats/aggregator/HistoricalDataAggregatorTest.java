@@ -0,0 +1,118 @@
+package dev.webecke.lakestats.aggregator;
+
+import dev.webecke.lakestats.model.HistoricalPeriodData;
+import dev.webecke.lakestats.model.TimeSeriesData;
+import dev.webecke.lakestats.model.measurements.DataType;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+
+import static dev.webecke.lakestats.model.TimeSeriesFixtures.daily;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class HistoricalDataAggregatorTest {
+    private final HistoricalDataAggregator aggregator = new HistoricalDataAggregator();
+
+    @Test
+    void splitsCalendarYearsAtTheYearBoundary() {
+        TimeSeriesData series = daily(LocalDate.of(2022, 12, 30), LocalDate.of(2024, 1, 2), date -> date.getYear());
+
+        List<HistoricalDataAggregator.CalendarYearArchive> years = aggregator.calendarYears(series);
+
+        assertEquals(3, years.size());
+        assertYear(years.get(0), 2022, 0, 2);
+        assertYear(years.get(1), 2023, 2, 367);
+        assertYear(years.get(2), 2024, 367, 369);
+
+        HistoricalPeriodData year2023 = years.get(1).periodData();
+        assertEquals(HistoricalPeriodData.PeriodType.CALENDAR_YEAR, year2023.type());
+        assertEquals(LocalDate.of(2023, 1, 1), year2023.startDate());
+        assertEquals(LocalDate.of(2023, 12, 31), year2023.endDate());
+        assertEquals(365, year2023.data().size());
+        assertTrue(year2023.data().stream().allMatch(entry -> entry.value() == 2023f));
+    }
+
+    @Test
+    void leavesOutYearsWithoutData() {
+        TimeSeriesData series = TimeSeriesData.fromColumns("powell", DataType.ELEVATION,
+                new int[]{day(2020, 12, 31), day(2023, 1, 1)}, new float[]{1f, 2f});
+
+        List<HistoricalDataAggregator.CalendarYearArchive> years = aggregator.calendarYears(series);
+
+        assertEquals(2, years.size());
+        assertYear(years.get(0), 2020, 0, 1);
+        assertYear(years.get(1), 2023, 1, 2);
+    }
+
+    @Test
+    void onlyTheChangedYearGetsANewHash() {
+        List<HistoricalDataAggregator.CalendarYearArchive> original = aggregator.calendarYears(
+                daily(LocalDate.of(2022, 1, 1), LocalDate.of(2024, 6, 15), date -> date.getDayOfYear()));
+        List<HistoricalDataAggregator.CalendarYearArchive> revised = aggregator.calendarYears(
+                daily(LocalDate.of(2022, 1, 1), LocalDate.of(2024, 6, 15),
+                        date -> date.equals(LocalDate.of(2023, 7, 4)) ? 0 : date.getDayOfYear()));
+        List<HistoricalDataAggregator.CalendarYearArchive> extended = aggregator.calendarYears(
+                daily(LocalDate.of(2022, 1, 1), LocalDate.of(2024, 6, 16), date -> date.getDayOfYear()));
+
+        assertEquals(original.get(0).contentHash(), revised.get(0).contentHash());
+        assertNotEquals(original.get(1).contentHash(), revised.get(1).contentHash());
+        assertEquals(original.get(2).contentHash(), revised.get(2).contentHash());
+
+        assertEquals(original.get(0).contentHash(), extended.get(0).contentHash());
+        assertEquals(original.get(1).contentHash(), extended.get(1).contentHash());
+        assertNotEquals(original.get(2).contentHash(), extended.get(2).contentHash());
+    }
+
+    @Test
+    void hashIsTheSameForTheSameContent() {
+        TimeSeriesData series = daily(LocalDate.of(2023, 1, 1), LocalDate.of(2023, 3, 1), date -> date.getDayOfMonth());
+        TimeSeriesData longer = daily(LocalDate.of(2020, 1, 1), LocalDate.of(2023, 3, 1), date -> date.getDayOfMonth());
+
+        // The year's hash doesn't depend on where in the series it starts
+        assertEquals(aggregator.calendarYears(series).getFirst().contentHash(), aggregator.calendarYears(longer).getLast().contentHash());
+    }
+
+    @Test
+    void hashDependsOnTheDataType() {
+        TimeSeriesData elevation = TimeSeriesData.fromColumns("powell", DataType.ELEVATION, new int[]{day(2023, 1, 1)}, new float[]{1f});
+        TimeSeriesData inflow = TimeSeriesData.fromColumns("powell", DataType.INFLOW, new int[]{day(2023, 1, 1)}, new float[]{1f});
+
+        assertNotEquals(aggregator.calendarYears(elevation).getFirst().contentHash(),
+                aggregator.calendarYears(inflow).getFirst().contentHash());
+    }
+
+    @Test
+    void changedYearsAreTheOnesMissingOrDifferentInTheManifest() {
+        List<HistoricalDataAggregator.CalendarYearArchive> years = aggregator.calendarYears(
+                daily(LocalDate.of(2021, 1, 1), LocalDate.of(2024, 6, 15), date -> date.getDayOfYear()));
+        Map<String, String> manifest = Map.of(
+                "2021", years.get(0).contentHash(),
+                "2022", years.get(1).contentHash(),
+                "2023", "an older hash of 2023",
+                "2019", "a year the series no longer has");
+
+        List<HistoricalDataAggregator.CalendarYearArchive> changed = HistoricalDataAggregator.changedYears(years, manifest);
+
+        assertEquals(List.of(2023, 2024), changed.stream().map(HistoricalDataAggregator.CalendarYearArchive::year).toList());
+    }
+
+    @Test
+    void everyYearChangesWithoutAManifest() {
+        List<HistoricalDataAggregator.CalendarYearArchive> years = aggregator.calendarYears(
+                daily(LocalDate.of(2022, 12, 31), LocalDate.of(2023, 1, 1), date -> 1));
+
+        assertEquals(years, HistoricalDataAggregator.changedYears(years, Map.of()));
+    }
+
+    private static void assertYear(HistoricalDataAggregator.CalendarYearArchive archive, int year, int fromIndex, int toIndex) {
+        assertEquals(year, archive.year());
+        assertEquals(fromIndex, archive.fromIndex());
+        assertEquals(toIndex, archive.toIndex());
+    }
+
+    private static int day(int year, int month, int dayOfMonth) {
+        return Math.toIntExact(LocalDate.of(year, month, dayOfMonth).toEpochDay());
+    }
+}
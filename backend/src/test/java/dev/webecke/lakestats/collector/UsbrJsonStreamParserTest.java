@@ -0,0 +1,107 @@
+package dev.webecke.lakestats.collector;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class UsbrJsonStreamParserTest {
+    private static final String DOCUMENT = """
+            {"columns": ["datetime", "elevation"],
+             "meta": {"data": [["1999-01-01", 1.0]]},
+             "data": [["2024-02-28", 3550.25], ["2024-02-29 00:00", 3550.5], ["2024-03-01", 3551]]}
+            """;
+
+    @Test
+    void parsesRowsInDocumentOrder() {
+        UsbrJsonStreamParser parser = parse(DOCUMENT, new UsbrJsonStreamParser(), DOCUMENT.length());
+
+        assertArrayEquals(new int[]{day("2024-02-28"), day("2024-02-29"), day("2024-03-01")}, parser.epochDays());
+        assertArrayEquals(new float[]{3550.25f, 3550.5f, 3551f}, parser.values());
+    }
+
+    @Test
+    void chunkBoundariesAnywhereGiveTheSameResult() {
+        byte[] bytes = DOCUMENT.getBytes(StandardCharsets.UTF_8);
+        UsbrJsonStreamParser whole = parse(DOCUMENT, new UsbrJsonStreamParser(), bytes.length);
+
+        for (int split = 1; split < bytes.length; split++) {
+            UsbrJsonStreamParser parser = new UsbrJsonStreamParser();
+            parser.feed(ByteBuffer.wrap(bytes, 0, split));
+            parser.feed(ByteBuffer.wrap(bytes, split, bytes.length - split));
+            parser.endOfInput();
+
+            assertArrayEquals(whole.epochDays(), parser.epochDays());
+            assertArrayEquals(whole.values(), parser.values());
+        }
+    }
+
+    @Test
+    void singleByteChunks() {
+        UsbrJsonStreamParser parser = parse(DOCUMENT, new UsbrJsonStreamParser(), 1);
+
+        assertEquals(3, parser.size());
+    }
+
+    @Test
+    void skipsRowsBeforeTheRevisionWindow() {
+        UsbrJsonStreamParser parser = parse(DOCUMENT, new UsbrJsonStreamParser(day("2024-02-29")), 7);
+
+        assertArrayEquals(new int[]{day("2024-02-29"), day("2024-03-01")}, parser.epochDays());
+        assertArrayEquals(new float[]{3550.5f, 3551f}, parser.values());
+    }
+
+    @Test
+    void growsPastItsInitialCapacity() {
+        StringBuilder document = new StringBuilder("{\"data\": [");
+        LocalDate date = LocalDate.of(2000, 1, 1);
+        for (int i = 0; i < 5000; i++) {
+            if (i > 0) { document.append(','); }
+            document.append("[\"").append(date.plusDays(i)).append("\", ").append(i).append(']');
+        }
+        document.append("]}");
+
+        UsbrJsonStreamParser parser = parse(document.toString(), new UsbrJsonStreamParser(), 4096);
+
+        assertEquals(5000, parser.size());
+        assertEquals(date.plusDays(4999).toEpochDay(), parser.epochDays()[4999]);
+        assertEquals(4999f, parser.values()[4999]);
+    }
+
+    @Test
+    void truncatedDocumentIsRejected() {
+        String truncated = DOCUMENT.substring(0, DOCUMENT.indexOf("3551"));
+        assertThrows(UncheckedIOException.class, () -> parse(truncated, new UsbrJsonStreamParser(), 16));
+    }
+
+    @Test
+    void invalidDateIsRejected() {
+        assertThrows(DateTimeException.class,
+                () -> parse("{\"data\": [[\"2023-02-29\", 1.0]]}", new UsbrJsonStreamParser(), 64));
+    }
+
+    @Test
+    void epochDayMatchesLocalDate() {
+        for (LocalDate date = LocalDate.of(1899, 12, 25); date.isBefore(LocalDate.of(2101, 1, 5)); date = date.plusDays(1)) {
+            assertEquals(date.toEpochDay(), UsbrJsonStreamParser.epochDay(date.getYear(), date.getMonthValue(), date.getDayOfMonth()));
+        }
+    }
+
+    private static UsbrJsonStreamParser parse(String document, UsbrJsonStreamParser parser, int chunkSize) {
+        byte[] bytes = document.getBytes(StandardCharsets.UTF_8);
+        for (int offset = 0; offset < bytes.length; offset += chunkSize) {
+            parser.feed(ByteBuffer.wrap(bytes, offset, Math.min(chunkSize, bytes.length - offset)));
+        }
+        parser.endOfInput();
+        return parser;
+    }
+
+    private static int day(String isoDate) {
+        return Math.toIntExact(LocalDate.parse(isoDate).toEpochDay());
+    }
+}
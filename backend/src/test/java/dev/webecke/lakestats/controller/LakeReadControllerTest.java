@@ -0,0 +1,154 @@
+package dev.webecke.lakestats.controller;
+
+import dev.webecke.lakestats.dao.DataAccessException;
+import dev.webecke.lakestats.dao.DatabaseAccess;
+import dev.webecke.lakestats.model.HistoricalPeriodData;
+import dev.webecke.lakestats.model.TimeSeriesData;
+import dev.webecke.lakestats.model.features.CurrentConditions;
+import dev.webecke.lakestats.model.measurements.DataType;
+import dev.webecke.lakestats.service.LakeReadCache;
+import dev.webecke.lakestats.utils.Serializer;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LakeReadControllerTest {
+    private static final String LAKE_ID = "powell";
+
+    // The lake's documents by the DatabaseAccess method that reads them, a DataAccessException makes the read fail
+    private final Map<String, Object> documents = new HashMap<>();
+    private final Serializer serializer = new Serializer();
+    private LakeReadCache cache;
+    private LakeReadController controller;
+
+    @BeforeEach
+    void setUp() {
+        documents.put("getCurrentConditions", conditions(3550.12f));
+        documents.put("getPast365Days", HistoricalPeriodData.create(LAKE_ID, HistoricalPeriodData.PeriodType.ROLLING_YEAR,
+                DataType.ELEVATION, List.of(new TimeSeriesData.TimeSeriesEntry(3550.12f, LocalDate.of(2024, 6, 15)))));
+        cache = new LakeReadCache(database(), serializer, Duration.ofMinutes(5), 16);
+        controller = new LakeReadController(cache, Duration.ofMinutes(5), Duration.ofDays(1));
+    }
+
+    @Test
+    void servesJsonWithAStrongEtag() {
+        ResponseEntity<byte[]> response = controller.getCurrentConditions(LAKE_ID, null, null);
+
+        assertEquals(200, response.getStatusCode().value());
+        assertEquals(serializer.serialize(documents.get("getCurrentConditions")), new String(response.getBody(), StandardCharsets.UTF_8));
+        String etag = response.getHeaders().getETag();
+        assertTrue(etag.startsWith("\"") && etag.endsWith("\""), etag);
+        assertNull(response.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING));
+        assertEquals("max-age=300, public, stale-while-revalidate=86400", response.getHeaders().getCacheControl());
+        assertTrue(response.getHeaders().getVary().contains(HttpHeaders.ACCEPT_ENCODING));
+    }
+
+    @Test
+    void gzipsForClientsThatAcceptIt() {
+        ResponseEntity<byte[]> plain = controller.getHistory(LAKE_ID, null, null);
+        ResponseEntity<byte[]> gzipped = controller.getHistory(LAKE_ID, null, "deflate, gzip;q=0.8, br");
+
+        assertEquals(200, gzipped.getStatusCode().value());
+        assertEquals("gzip", gzipped.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING));
+        assertArrayEquals(plain.getBody(), gunzip(gzipped.getBody()));
+        // Different bytes, so a different strong ETag
+        assertNotEquals(plain.getHeaders().getETag(), gzipped.getHeaders().getETag());
+    }
+
+    @Test
+    void gzipWithZeroQualityIsRefused() {
+        ResponseEntity<byte[]> response = controller.getHistory(LAKE_ID, null, "gzip;q=0");
+
+        assertNull(response.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING));
+    }
+
+    @Test
+    void matchingEtagGetsAnEmptyNotModified() {
+        String etag = controller.getCurrentConditions(LAKE_ID, null, null).getHeaders().getETag();
+
+        ResponseEntity<byte[]> response = controller.getCurrentConditions(LAKE_ID, etag, null);
+
+        assertEquals(304, response.getStatusCode().value());
+        assertNull(response.getBody());
+        assertEquals(etag, response.getHeaders().getETag());
+    }
+
+    @Test
+    void eitherEncodingsEtagMatchesWeaklyOrInAList() {
+        String etag = controller.getCurrentConditions(LAKE_ID, null, null).getHeaders().getETag();
+        String gzipEtag = controller.getCurrentConditions(LAKE_ID, null, "gzip").getHeaders().getETag();
+
+        assertEquals(304, controller.getCurrentConditions(LAKE_ID, "W/" + etag, "gzip").getStatusCode().value());
+        assertEquals(304, controller.getCurrentConditions(LAKE_ID, "\"other\", " + gzipEtag, null).getStatusCode().value());
+        assertEquals(304, controller.getCurrentConditions(LAKE_ID, "*", null).getStatusCode().value());
+        // A 304 carries the ETag of the encoding the client would have been sent
+        assertEquals(gzipEtag, controller.getCurrentConditions(LAKE_ID, etag, "gzip").getHeaders().getETag());
+    }
+
+    @Test
+    void staleEtagGetsTheNewBody() {
+        String etag = controller.getCurrentConditions(LAKE_ID, null, null).getHeaders().getETag();
+
+        cache.publishedCurrentConditions(conditions(3551f));
+        ResponseEntity<byte[]> response = controller.getCurrentConditions(LAKE_ID, etag, null);
+
+        assertEquals(200, response.getStatusCode().value());
+        assertNotEquals(etag, response.getHeaders().getETag());
+        assertTrue(new String(response.getBody(), StandardCharsets.UTF_8).contains("3551"));
+    }
+
+    @Test
+    void missingDocumentIsNotFound() {
+        documents.remove("getPast365Days");
+
+        assertEquals(404, controller.getHistory(LAKE_ID, null, null).getStatusCode().value());
+    }
+
+    @Test
+    void failedReadIsServiceUnavailable() {
+        documents.put("getPast365Days", new DataAccessException("Firestore is down"));
+
+        assertEquals(503, controller.getHistory(LAKE_ID, null, null).getStatusCode().value());
+    }
+
+    private DatabaseAccess database() {
+        return (DatabaseAccess) Proxy.newProxyInstance(DatabaseAccess.class.getClassLoader(), new Class<?>[]{DatabaseAccess.class},
+                (proxy, method, arguments) -> {
+                    if (!method.getName().equals("getCurrentConditions") && !method.getName().equals("getPast365Days")) {
+                        throw new UnsupportedOperationException(method.getName());
+                    }
+                    Object document = documents.get(method.getName());
+                    if (document instanceof DataAccessException e) { throw e; }
+                    return document;
+                });
+    }
+
+    private static CurrentConditions conditions(float levelToday) {
+        return new CurrentConditions(LAKE_ID, LocalDateTime.of(2024, 6, 15, 6, 0), LocalDate.of(2024, 6, 15),
+                levelToday, 3550f, 3549f, 3560f, 3570f, 1994, 2023, 3600f, 3550f, 3601f, 3650f, 3700f, 3490f, 40f, 0.5f, 1.25f, 3549f, 3551f);
+    }
+
+    private static byte[] gunzip(byte[] gzipped) {
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(gzipped))) {
+            return in.readAllBytes();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
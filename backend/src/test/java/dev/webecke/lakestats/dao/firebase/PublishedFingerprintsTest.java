@@ -0,0 +1,149 @@
+package dev.webecke.lakestats.dao.firebase;
+
+import com.google.cloud.firestore.DocumentReference;
+import com.google.cloud.firestore.DocumentSnapshot;
+import org.junit.jupiter.api.Test;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class PublishedFingerprintsTest {
+    private static final String PATH = "powell/current_conditions";
+
+    private final PublishedFingerprints fingerprints = new PublishedFingerprints();
+
+    @Test
+    void doesNotDependOnFieldOrder() {
+        Map<String, Object> document = new LinkedHashMap<>();
+        document.put("lakeId", "powell");
+        document.put("levelToday", 3550.5);
+        document.put("nested", new LinkedHashMap<>(Map.of("a", 1L)));
+        Map<String, Object> reordered = new LinkedHashMap<>();
+        reordered.put("nested", new LinkedHashMap<>(Map.of("a", 1L)));
+        reordered.put("levelToday", 3550.5);
+        reordered.put("lakeId", "powell");
+
+        assertEquals(fingerprint(document), fingerprint(reordered));
+    }
+
+    @Test
+    void wholeNumbersMatchWhetherLongOrDouble() {
+        // Documents that go through JSON have only Doubles, records keep their Integers and Longs
+        assertEquals(fingerprint(Map.of("sortOrder", 3L)), fingerprint(Map.of("sortOrder", 3.0)));
+        assertEquals(fingerprint(Map.of("sortOrder", 3)), fingerprint(Map.of("sortOrder", 3.0f)));
+        assertEquals(fingerprint(Map.of("values", List.of(1L, 2L))), fingerprint(Map.of("values", List.of(1.0, 2.0))));
+
+        assertNotEquals(fingerprint(Map.of("level", 3L)), fingerprint(Map.of("level", 3.5)));
+        assertNotEquals(fingerprint(Map.of("level", 3L)), fingerprint(Map.of("level", "3")));
+    }
+
+    @Test
+    void changesWithTheContent() {
+        assertNotEquals(fingerprint(Map.of("levelToday", 3550.5)), fingerprint(Map.of("levelToday", 3550.25)));
+        assertNotEquals(fingerprint(Map.of("a", "bc")), fingerprint(Map.of("ab", "c")));
+        assertNotEquals(fingerprint(Map.of("a", List.of())), fingerprint(Map.of("a", Map.of())));
+    }
+
+    @Test
+    void leavesOutIgnoredFields() {
+        Map<String, Object> document = Map.of("levelToday", 3550.5, "timeOfCollection", "2024-06-15T06:00:00");
+        Map<String, Object> nextRun = Map.of("levelToday", 3550.5, "timeOfCollection", "2024-06-16T06:00:00");
+
+        assertEquals(PublishedFingerprints.fingerprint(document, Set.of("timeOfCollection")),
+                PublishedFingerprints.fingerprint(nextRun, Set.of("timeOfCollection")));
+        assertNotEquals(fingerprint(document), fingerprint(nextRun));
+    }
+
+    @Test
+    void leavesOutIgnoredNestedFieldsOnly() {
+        Set<String> ignored = Set.of("publishedAt", "currentConditions.timeOfCollection");
+        Map<String, Object> snapshot = Map.of(
+                "publishedAt", "2024-06-15T06:00:00Z",
+                "currentConditions", Map.of("levelToday", 3550.5, "timeOfCollection", "2024-06-15T06:00:00"));
+        Map<String, Object> nextRun = Map.of(
+                "publishedAt", "2024-06-16T06:00:00Z",
+                "currentConditions", Map.of("levelToday", 3550.5, "timeOfCollection", "2024-06-16T06:00:00"));
+        Map<String, Object> changed = Map.of(
+                "publishedAt", "2024-06-16T06:00:00Z",
+                "currentConditions", Map.of("levelToday", 3551.0, "timeOfCollection", "2024-06-16T06:00:00"));
+
+        assertEquals(PublishedFingerprints.fingerprint(snapshot, ignored), PublishedFingerprints.fingerprint(nextRun, ignored));
+        assertNotEquals(PublishedFingerprints.fingerprint(snapshot, ignored), PublishedFingerprints.fingerprint(changed, ignored));
+        // The nested map is copied rather than changed
+        assertTrue(((Map<?, ?>) snapshot.get("currentConditions")).containsKey("timeOfCollection"));
+    }
+
+    @Test
+    void leavesOutTheStoredFingerprint() {
+        Map<String, Object> document = Map.of("levelToday", 3550.5);
+        Map<String, Object> stored = Map.of("levelToday", 3550.5, PublishedFingerprints.FIELD, fingerprint(document));
+
+        assertEquals(fingerprint(document), fingerprint(stored));
+    }
+
+    @Test
+    void skipsOnlyAfterPublished() {
+        String fingerprint = fingerprint(Map.of("levelToday", 3550.5));
+        assertFalse(fingerprints.isUnchanged(PATH, fingerprint));
+
+        fingerprints.published(PATH, fingerprint);
+        assertTrue(fingerprints.isUnchanged(PATH, fingerprint));
+        assertFalse(fingerprints.isUnchanged(PATH, fingerprint(Map.of("levelToday", 3551.0))));
+        assertFalse(fingerprints.isUnchanged("mead/current_conditions", fingerprint));
+    }
+
+    @Test
+    void batchFingerprintsArePublishedOnlyOnceCommitted() {
+        String fingerprint = fingerprint(Map.of("levelToday", 3550.5));
+
+        PublishedFingerprints.Pending failed = fingerprints.pending();
+        failed.add(PATH, fingerprint);
+        // The commit failed, so committed() is never called
+        assertFalse(fingerprints.isUnchanged(PATH, fingerprint));
+
+        PublishedFingerprints.Pending succeeded = fingerprints.pending();
+        succeeded.add(PATH, fingerprint);
+        assertFalse(fingerprints.isUnchanged(PATH, fingerprint));
+        succeeded.committed();
+        assertTrue(fingerprints.isUnchanged(PATH, fingerprint));
+    }
+
+    @Test
+    void seedsFromAStoredFingerprint() {
+        String fingerprint = fingerprint(Map.of("levelToday", 3550.5));
+
+        fingerprints.read(snapshot(PATH, true, fingerprint));
+        assertTrue(fingerprints.isUnchanged(PATH, fingerprint));
+    }
+
+    @Test
+    void doesNotSeedWithoutAStoredFingerprint() {
+        String fingerprint = fingerprint(Map.of("levelToday", 3550.5));
+
+        fingerprints.read(snapshot(PATH, true, null));
+        fingerprints.read(snapshot("mead/current_conditions", false, fingerprint));
+
+        assertFalse(fingerprints.isUnchanged(PATH, fingerprint));
+        assertFalse(fingerprints.isUnchanged("mead/current_conditions", fingerprint));
+    }
+
+    private static String fingerprint(Map<String, Object> document) {
+        return PublishedFingerprints.fingerprint(document, Set.of());
+    }
+
+    private static DocumentSnapshot snapshot(String path, boolean exists, String storedFingerprint) {
+        DocumentReference reference = mock(DocumentReference.class);
+        when(reference.getPath()).thenReturn(path);
+        DocumentSnapshot snapshot = mock(DocumentSnapshot.class);
+        when(snapshot.exists()).thenReturn(exists);
+        when(snapshot.get(PublishedFingerprints.FIELD)).thenReturn(storedFingerprint);
+        when(snapshot.getReference()).thenReturn(reference);
+        return snapshot;
+    }
+}
@@ -0,0 +1,146 @@
+package dev.webecke.lakestats.dao.local;
+
+import dev.webecke.lakestats.model.TimeSeriesData;
+import dev.webecke.lakestats.model.measurements.DataType;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MappedTimeSeriesStoreTest {
+    private static final String LAKE = "powell";
+    private static final DataType TYPE = DataType.ELEVATION;
+
+    @TempDir
+    Path directory;
+
+    private MappedTimeSeriesStore store;
+
+    @BeforeEach
+    void setUp() {
+        store = new MappedTimeSeriesStore(directory.toString());
+    }
+
+    @Test
+    void emptyStoreHasNothing() {
+        assertEquals(MappedTimeSeriesStore.EMPTY, store.lastEpochDay(LAKE, TYPE));
+        assertNull(store.read(LAKE, TYPE));
+    }
+
+    @Test
+    void appendsNewDays() {
+        assertEquals(3, store.merge(LAKE, TYPE, new int[]{100, 101, 102}, new float[]{1, 2, 3}));
+        assertEquals(2, store.merge(LAKE, TYPE, new int[]{103, 104}, new float[]{4, 5}));
+
+        assertEquals(104, store.lastEpochDay(LAKE, TYPE));
+        assertSeries(store.read(LAKE, TYPE), new int[]{100, 101, 102, 103, 104}, new float[]{1, 2, 3, 4, 5});
+    }
+
+    @Test
+    void revisesStoredDaysInPlace() {
+        store.merge(LAKE, TYPE, new int[]{100, 101, 102}, new float[]{1, 2, 3});
+
+        // A revision window overlapping the stored days, plus one new day
+        assertEquals(1, store.merge(LAKE, TYPE, new int[]{101, 102, 103}, new float[]{20, 30, 40}));
+
+        assertSeries(store.read(LAKE, TYPE), new int[]{100, 101, 102, 103}, new float[]{1, 20, 30, 40});
+    }
+
+    @Test
+    void ignoresDaysBeforeTheStoredSeries() {
+        store.merge(LAKE, TYPE, new int[]{100, 101}, new float[]{1, 2});
+        assertEquals(0, store.merge(LAKE, TYPE, new int[]{90, 91}, new float[]{9, 9}));
+
+        assertSeries(store.read(LAKE, TYPE), new int[]{100, 101}, new float[]{1, 2});
+    }
+
+    @Test
+    void sortsUnsortedInput() {
+        assertEquals(4, store.merge(LAKE, TYPE, new int[]{103, 100, 102, 101}, new float[]{4, 1, 3, 2}));
+
+        assertSeries(store.read(LAKE, TYPE), new int[]{100, 101, 102, 103}, new float[]{1, 2, 3, 4});
+    }
+
+    @Test
+    void keepsTheLastValueOfARepeatedDay() {
+        assertEquals(3, store.merge(LAKE, TYPE, new int[]{100, 101, 101, 102}, new float[]{1, 2, 22, 3}));
+        assertEquals(1, store.merge(LAKE, TYPE, new int[]{103, 102, 103}, new float[]{4, 33, 44}));
+
+        assertSeries(store.read(LAKE, TYPE), new int[]{100, 101, 102, 103}, new float[]{1, 22, 33, 44});
+    }
+
+    @Test
+    void doesNotChangeTheCallersArrays() {
+        int[] days = {101, 100};
+        float[] values = {2, 1};
+        store.merge(LAKE, TYPE, days, values);
+
+        assertArrayEquals(new int[]{101, 100}, days);
+        assertArrayEquals(new float[]{2, 1}, values);
+    }
+
+    @Test
+    void rejectsMismatchedColumns() {
+        assertThrows(IllegalArgumentException.class, () -> store.merge(LAKE, TYPE, new int[]{100, 101}, new float[]{1}));
+    }
+
+    @Test
+    void seriesSurviveANewStoreInstance() {
+        store.merge(LAKE, TYPE, new int[]{100, 101}, new float[]{1, 2});
+
+        MappedTimeSeriesStore reopened = new MappedTimeSeriesStore(directory.toString());
+        assertEquals(101, reopened.lastEpochDay(LAKE, TYPE));
+        assertSeries(reopened.read(LAKE, TYPE), new int[]{100, 101}, new float[]{1, 2});
+    }
+
+    @Test
+    void readsAgainAfterAnotherInstanceChangesTheFile() {
+        store.merge(LAKE, TYPE, new int[]{100, 101}, new float[]{1, 2});
+        TimeSeriesData copied = store.read(LAKE, TYPE);
+        assertSame(copied, store.read(LAKE, TYPE));
+
+        // Stands in for another instance sharing the directory
+        MappedTimeSeriesStore other = new MappedTimeSeriesStore(directory.toString());
+        other.merge(LAKE, TYPE, new int[]{101}, new float[]{5});
+        assertSeries(store.read(LAKE, TYPE), new int[]{100, 101}, new float[]{1, 5});
+
+        other.merge(LAKE, TYPE, new int[]{102}, new float[]{6});
+        assertEquals(102, store.lastEpochDay(LAKE, TYPE));
+        assertSeries(store.read(LAKE, TYPE), new int[]{100, 101, 102}, new float[]{1, 5, 6});
+    }
+
+    @Test
+    void unrecognizedFileIsTreatedAsEmptyAndReplaced() throws IOException {
+        Path file = directory.resolve(LAKE).resolve(TYPE.name() + ".series");
+        Files.createDirectories(file.getParent());
+        Files.write(file, new byte[]{1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16, 17});
+
+        assertEquals(MappedTimeSeriesStore.EMPTY, store.lastEpochDay(LAKE, TYPE));
+        assertEquals(2, store.merge(LAKE, TYPE, new int[]{100, 101}, new float[]{1, 2}));
+        assertSeries(store.read(LAKE, TYPE), new int[]{100, 101}, new float[]{1, 2});
+    }
+
+    @Test
+    void rejectsUnsafeLakeIds() {
+        assertThrows(IllegalArgumentException.class, () -> store.read("../elsewhere", TYPE));
+    }
+
+    @Test
+    void requiresADirectory() {
+        assertThrows(IllegalArgumentException.class, () -> new MappedTimeSeriesStore(" "));
+    }
+
+    private static void assertSeries(TimeSeriesData series, int[] epochDays, float[] values) {
+        assertNotNull(series);
+        assertEquals(epochDays.length, series.size());
+        for (int i = 0; i < epochDays.length; i++) {
+            assertEquals(epochDays[i], series.epochDayAt(i), "day at " + i);
+            assertEquals(values[i], series.valueAt(i), 0f, "value at " + i);
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package dev.webecke.lakestats.model;
+
+import dev.webecke.lakestats.model.measurements.DataType;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TimeSeriesDataTest {
+    private static final LocalDate START = LocalDate.of(2024, 2, 27);
+
+    @Test
+    void sortsEntriesGivenInAnyOrder() {
+        TimeSeriesData series = new TimeSeriesData("powell", List.of(
+                entry(2, 3f),
+                entry(0, 1f),
+                entry(1, 2f)
+        ), DataType.ELEVATION);
+
+        assertEquals(3, series.size());
+        for (int i = 0; i < 3; i++) {
+            assertEquals(START.plusDays(i), series.dateAt(i));
+            assertEquals(i + 1f, series.valueAt(i));
+        }
+        assertEquals(entry(2, 3f), series.latest());
+    }
+
+    @Test
+    void fromColumnsKeepsValuesWithTheirDates() {
+        TimeSeriesData series = TimeSeriesData.fromColumns("powell", DataType.ELEVATION,
+                new int[]{30, 10, 20}, new float[]{3f, 1f, 2f});
+
+        assertEquals(10, series.epochDayAt(0));
+        assertEquals(1f, series.valueAt(0));
+        assertEquals(30, series.epochDayAt(2));
+        assertEquals(3f, series.valueAt(2));
+    }
+
+    @Test
+    void rejectsDuplicateDates() {
+        assertThrows(IllegalArgumentException.class, () -> TimeSeriesData.fromColumns("powell", DataType.ELEVATION,
+                new int[]{10, 11, 10}, new float[]{1f, 2f, 3f}));
+    }
+
+    @Test
+    void rejectsMismatchedColumns() {
+        assertThrows(IllegalArgumentException.class, () -> TimeSeriesData.fromColumns("powell", DataType.ELEVATION,
+                new int[]{10, 11}, new float[]{1f}));
+    }
+
+    @Test
+    void indexOfWithoutGaps() {
+        TimeSeriesData series = TimeSeriesData.fromColumns("powell", DataType.ELEVATION,
+                new int[]{10, 11, 12, 13}, new float[]{1f, 2f, 3f, 4f});
+
+        assertEquals(0, series.indexOf(10));
+        assertEquals(3, series.indexOf(13));
+        assertEquals(-1, series.indexOf(9));
+        assertEquals(-1, series.indexOf(14));
+    }
+
+    @Test
+    void indexOfWithGaps() {
+        TimeSeriesData series = TimeSeriesData.fromColumns("powell", DataType.ELEVATION,
+                new int[]{10, 12, 15, 16}, new float[]{1f, 2f, 3f, 4f});
+
+        assertEquals(1, series.indexOf(12));
+        assertEquals(2, series.indexOf(15));
+        assertEquals(-1, series.indexOf(11));
+        assertEquals(-1, series.indexOf(13));
+        assertNull(series.entryOn(LocalDate.ofEpochDay(14)));
+        assertEquals(new TimeSeriesData.TimeSeriesEntry(4f, LocalDate.ofEpochDay(16)), series.entryOn(LocalDate.ofEpochDay(16)));
+    }
+
+    @Test
+    void lowerBound() {
+        TimeSeriesData series = TimeSeriesData.fromColumns("powell", DataType.ELEVATION,
+                new int[]{10, 12, 15}, new float[]{1f, 2f, 3f});
+
+        assertEquals(0, series.lowerBound(5));
+        assertEquals(1, series.lowerBound(11));
+        assertEquals(1, series.lowerBound(12));
+        assertEquals(3, series.lowerBound(16));
+    }
+
+    @Test
+    void entriesAndNewestFirstView() {
+        TimeSeriesData series = TimeSeriesData.fromColumns("powell", DataType.ELEVATION,
+                new int[]{10, 11, 12}, new float[]{1f, 2f, 3f});
+
+        assertEquals(List.of(series.entryAt(1), series.entryAt(2)), series.entries(1, 3));
+        assertEquals(List.of(series.entryAt(2), series.entryAt(1), series.entryAt(0)), series.chronologicalData());
+    }
+
+    @Test
+    void emptySeries() {
+        TimeSeriesData series = new TimeSeriesData("powell", List.of(), DataType.ELEVATION);
+
+        assertTrue(series.isEmpty());
+        assertEquals(-1, series.indexOf(10));
+        assertEquals(0, series.lowerBound(10));
+    }
+
+    private static TimeSeriesData.TimeSeriesEntry entry(int daysAfterStart, float value) {
+        return new TimeSeriesData.TimeSeriesEntry(value, START.plusDays(daysAfterStart));
+    }
+}
@@ -0,0 +1,31 @@
+package dev.webecke.lakestats.model;
+
+import dev.webecke.lakestats.model.measurements.DataType;
+
+import java.time.LocalDate;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Series for tests that need more days than are worth writing out
+ */
+public final class TimeSeriesFixtures {
+    public static final String LAKE_ID = "powell";
+
+    private TimeSeriesFixtures() {}
+
+    /**
+     * @return a gapless daily elevation series for {@link #LAKE_ID} from <code>first</code> to <code>last</code>
+     *         (inclusive), with each day's value given by <code>value</code>
+     */
+    public static TimeSeriesData daily(LocalDate first, LocalDate last, ToDoubleFunction<LocalDate> value) {
+        int days = Math.toIntExact(last.toEpochDay() - first.toEpochDay()) + 1;
+        int[] epochDays = new int[days];
+        float[] values = new float[days];
+        for (int i = 0; i < days; i++) {
+            LocalDate date = first.plusDays(i);
+            epochDays[i] = Math.toIntExact(date.toEpochDay());
+            values[i] = (float) value.applyAsDouble(date);
+        }
+        return TimeSeriesData.fromColumns(LAKE_ID, DataType.ELEVATION, epochDays, values);
+    }
+}
@@ -0,0 +1,85 @@
+package dev.webecke.lakestats.model;
+
+import dev.webecke.lakestats.model.measurements.DataType;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TimeSeriesRangeIndexTest {
+    private static final float[] VALUES = {5f, 3f, 8f, 1f, 9f, 2f, 7f, 4f, 6f, 0f, 3f};
+
+    @Test
+    void everyRangeMatchesAScan() {
+        TimeSeriesRangeIndex index = series(VALUES).rangeIndex();
+
+        for (int from = 0; from < VALUES.length; from++) {
+            for (int to = from + 1; to <= VALUES.length; to++) {
+                float min = Float.MAX_VALUE;
+                float max = -Float.MAX_VALUE;
+                double sum = 0;
+                for (int i = from; i < to; i++) {
+                    min = Math.min(min, VALUES[i]);
+                    max = Math.max(max, VALUES[i]);
+                    sum += VALUES[i];
+                }
+                assertEquals(min, index.min(from, to));
+                assertEquals(max, index.max(from, to));
+                assertEquals(sum, index.sum(from, to));
+                assertEquals((float) (sum / (to - from)), index.mean(from, to));
+                assertEquals(VALUES[to - 1] - VALUES[from], index.netChange(from, to));
+            }
+        }
+    }
+
+    @Test
+    void statsCoverTheEntriesInsideTheDateRange() {
+        // Days 0, 2, 4 and 6, so the range from day 1 to day 5 holds days 2 and 4
+        TimeSeriesData series = TimeSeriesData.fromColumns("powell", DataType.ELEVATION,
+                new int[]{0, 2, 4, 6}, new float[]{10f, 20f, 15f, 30f});
+
+        TimeSeriesRangeIndex.RangeStats stats = series.rangeIndex().stats(LocalDate.ofEpochDay(1), LocalDate.ofEpochDay(5));
+
+        assertEquals(LocalDate.ofEpochDay(2), stats.from());
+        assertEquals(LocalDate.ofEpochDay(4), stats.to());
+        assertEquals(2, stats.count());
+        assertEquals(15f, stats.min());
+        assertEquals(20f, stats.max());
+        assertEquals(17.5f, stats.mean());
+        assertEquals(-5f, stats.netChange());
+    }
+
+    @Test
+    void statsAreNullWithoutEntriesInTheRange() {
+        TimeSeriesData series = TimeSeriesData.fromColumns("powell", DataType.ELEVATION,
+                new int[]{0, 10}, new float[]{1f, 2f});
+
+        assertNull(series.rangeIndex().stats(LocalDate.ofEpochDay(1), LocalDate.ofEpochDay(9)));
+        assertNull(series(new float[0]).rangeIndex().stats(LocalDate.ofEpochDay(0), LocalDate.ofEpochDay(9)));
+    }
+
+    @Test
+    void indexIsBuiltOnce() {
+        TimeSeriesData series = series(VALUES);
+
+        assertSame(series.rangeIndex(), series.rangeIndex());
+    }
+
+    @Test
+    void rejectsEmptyAndOutOfBoundsRanges() {
+        TimeSeriesRangeIndex index = series(VALUES).rangeIndex();
+
+        assertThrows(IndexOutOfBoundsException.class, () -> index.min(3, 3));
+        assertThrows(IndexOutOfBoundsException.class, () -> index.max(-1, 2));
+        assertThrows(IndexOutOfBoundsException.class, () -> index.sum(0, VALUES.length + 1));
+    }
+
+    private static TimeSeriesData series(float[] values) {
+        int[] epochDays = new int[values.length];
+        for (int i = 0; i < values.length; i++) {
+            epochDays[i] = i;
+        }
+        return TimeSeriesData.fromColumns("powell", DataType.ELEVATION, epochDays, values);
+    }
+}
@@ -0,0 +1,167 @@
+package dev.webecke.lakestats.service;
+
+import dev.webecke.lakestats.dao.DataAccessException;
+import dev.webecke.lakestats.dao.DatabaseAccess;
+import dev.webecke.lakestats.model.features.CurrentConditions;
+import dev.webecke.lakestats.utils.Serializer;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LakeReadCacheTest {
+    // Current conditions by lake id, a DataAccessException makes the read fail
+    private final Map<String, Object> stored = new HashMap<>();
+    private int reads = 0;
+
+    @Test
+    void readsEachDocumentOnceWhileFresh() {
+        LakeReadCache cache = cache(Duration.ofMinutes(5), 16);
+        stored.put("powell", conditions("powell", 3550f));
+
+        LakeReadCache.CachedResponse first = cache.getCurrentConditions("powell");
+        LakeReadCache.CachedResponse second = cache.getCurrentConditions("powell");
+
+        assertSame(first, second);
+        assertEquals(1, reads);
+    }
+
+    @Test
+    void publishedDocumentsAreServedWithoutARead() {
+        LakeReadCache cache = cache(Duration.ofMinutes(5), 16);
+
+        cache.publishedCurrentConditions(conditions("powell", 3551f));
+
+        assertTrue(json(cache.getCurrentConditions("powell")).contains("3551"));
+        assertEquals(0, reads);
+    }
+
+    @Test
+    void expiredDocumentsAreReadAgain() {
+        LakeReadCache cache = cache(Duration.ofNanos(1), 16);
+        stored.put("powell", conditions("powell", 3550f));
+        cache.getCurrentConditions("powell");
+
+        // Written by another instance's collector
+        stored.put("powell", conditions("powell", 3552f));
+
+        assertTrue(json(cache.getCurrentConditions("powell")).contains("3552"));
+        assertEquals(2, reads);
+    }
+
+    @Test
+    void expiredCopyIsServedWhenTheReadFails() {
+        LakeReadCache cache = cache(Duration.ofNanos(1), 16);
+        stored.put("powell", conditions("powell", 3550f));
+        LakeReadCache.CachedResponse cached = cache.getCurrentConditions("powell");
+
+        stored.put("powell", new DataAccessException("Firestore is down"));
+
+        assertSame(cached, cache.getCurrentConditions("powell"));
+    }
+
+    @Test
+    void failedReadWithNothingCachedIsThrown() {
+        LakeReadCache cache = cache(Duration.ofMinutes(5), 16);
+        stored.put("powell", new DataAccessException("Firestore is down"));
+
+        assertThrows(DataAccessException.class, () -> cache.getCurrentConditions("powell"));
+    }
+
+    @Test
+    void deletedDocumentsAreDropped() {
+        LakeReadCache cache = cache(Duration.ofNanos(1), 16);
+        stored.put("powell", conditions("powell", 3550f));
+        cache.getCurrentConditions("powell");
+
+        stored.remove("powell");
+
+        assertNull(cache.getCurrentConditions("powell"));
+    }
+
+    @Test
+    void missingDocumentsAreReadOnceWhileFresh() {
+        LakeReadCache cache = cache(Duration.ofMinutes(5), 16);
+
+        assertNull(cache.getCurrentConditions("not-a-lake"));
+        assertNull(cache.getCurrentConditions("not-a-lake"));
+        assertEquals(1, reads);
+    }
+
+    @Test
+    void publishingReplacesAMissingDocument() {
+        LakeReadCache cache = cache(Duration.ofMinutes(5), 16);
+        assertNull(cache.getCurrentConditions("powell"));
+
+        cache.publishedCurrentConditions(conditions("powell", 3551f));
+
+        assertTrue(json(cache.getCurrentConditions("powell")).contains("3551"));
+        assertEquals(1, reads);
+    }
+
+    @Test
+    void missingDocumentsAreReadAgainOnceExpired() {
+        LakeReadCache cache = cache(Duration.ofNanos(1), 16);
+        assertNull(cache.getCurrentConditions("powell"));
+
+        stored.put("powell", conditions("powell", 3550f));
+
+        assertNotNull(cache.getCurrentConditions("powell"));
+        assertEquals(2, reads);
+    }
+
+    @Test
+    void evictsTheLeastRecentlyUsed() {
+        LakeReadCache cache = cache(Duration.ofMinutes(5), 2);
+        stored.put("powell", conditions("powell", 1f));
+        stored.put("mead", conditions("mead", 2f));
+        stored.put("flaming-gorge", conditions("flaming-gorge", 3f));
+
+        cache.getCurrentConditions("powell");
+        cache.getCurrentConditions("mead");
+        cache.getCurrentConditions("powell");
+        cache.getCurrentConditions("flaming-gorge"); // Evicts mead
+        assertEquals(3, reads);
+
+        cache.getCurrentConditions("powell");
+        assertEquals(3, reads);
+        cache.getCurrentConditions("mead");
+        assertEquals(4, reads);
+    }
+
+    @Test
+    void rejectsInvalidLimits() {
+        assertThrows(IllegalArgumentException.class, () -> cache(Duration.ZERO, 16));
+        assertThrows(IllegalArgumentException.class, () -> cache(Duration.ofMinutes(5), 0));
+    }
+
+    private LakeReadCache cache(Duration ttl, int maxEntries) {
+        DatabaseAccess database = (DatabaseAccess) Proxy.newProxyInstance(DatabaseAccess.class.getClassLoader(),
+                new Class<?>[]{DatabaseAccess.class}, (proxy, method, arguments) -> {
+                    if (!method.getName().equals("getCurrentConditions")) {
+                        throw new UnsupportedOperationException(method.getName());
+                    }
+                    reads++;
+                    Object document = stored.get((String) arguments[0]);
+                    if (document instanceof DataAccessException e) { throw e; }
+                    return document;
+                });
+        return new LakeReadCache(database, new Serializer(), ttl, maxEntries);
+    }
+
+    private static CurrentConditions conditions(String lakeId, float levelToday) {
+        return new CurrentConditions(lakeId, LocalDateTime.of(2024, 6, 15, 6, 0), LocalDate.of(2024, 6, 15),
+                levelToday, 0f, 0f, 0f, 0f, null, null, null, null, null, null, null, null, null, 0f, 0f, 0f, 0f);
+    }
+
+    private static String json(LakeReadCache.CachedResponse response) {
+        return new String(response.json(), StandardCharsets.UTF_8);
+    }
+}
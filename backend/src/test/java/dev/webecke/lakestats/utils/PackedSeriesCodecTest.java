@@ -0,0 +1,156 @@
+package dev.webecke.lakestats.utils;
+
+import dev.webecke.lakestats.model.HistoricalPeriodData;
+import dev.webecke.lakestats.model.PackedSeries;
+import dev.webecke.lakestats.model.TimeSeriesData;
+import dev.webecke.lakestats.model.measurements.DataType;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PackedSeriesCodecTest {
+    private static final LocalDate START = LocalDate.of(2023, 6, 15);
+
+    /**
+     * Shared with the frontend's decoder in <code>shared/services/data/packed-series.ts</code>, which documents the
+     * same vector. It crosses a leap day and has a repeated value, a zero and a negative value.
+     */
+    private static final String GOLDEN_VALUES = "iKsrGcwBALmsK8MT";
+    private static final List<TimeSeriesData.TimeSeriesEntry> GOLDEN_ENTRIES = List.of(
+            new TimeSeriesData.TimeSeriesEntry(3550.12f, LocalDate.of(2024, 2, 27)),
+            new TimeSeriesData.TimeSeriesEntry(3549.99f, LocalDate.of(2024, 2, 28)),
+            new TimeSeriesData.TimeSeriesEntry(3551.01f, LocalDate.of(2024, 2, 29)),
+            new TimeSeriesData.TimeSeriesEntry(3551.01f, LocalDate.of(2024, 3, 1)),
+            new TimeSeriesData.TimeSeriesEntry(0f, LocalDate.of(2024, 3, 2)),
+            new TimeSeriesData.TimeSeriesEntry(-12.5f, LocalDate.of(2024, 3, 3))
+    );
+
+    @Test
+    void packsTheGoldenVector() {
+        PackedSeries packed = PackedSeriesCodec.pack(GOLDEN_ENTRIES, 100);
+
+        assertEquals(new PackedSeries(PackedSeries.DELTA_VARINT_V1, 100, LocalDate.of(2024, 2, 27), 6, GOLDEN_VALUES), packed);
+    }
+
+    @Test
+    void unpacksTheGoldenVector() {
+        PackedSeries packed = new PackedSeries(PackedSeries.DELTA_VARINT_V1, 100, LocalDate.of(2024, 2, 27), 6, GOLDEN_VALUES);
+
+        assertEquals(GOLDEN_ENTRIES, PackedSeriesCodec.unpack(packed));
+    }
+
+    @Test
+    void roundTripsAYearOfElevations() {
+        List<TimeSeriesData.TimeSeriesEntry> entries = new ArrayList<>();
+        for (int i = 0; i < 365; i++) {
+            entries.add(new TimeSeriesData.TimeSeriesEntry(3550.12f + (i % 17) * 0.37f - i * 0.05f, START.plusDays(i)));
+        }
+
+        PackedSeries packed = PackedSeriesCodec.pack(entries, PackedSeriesCodec.DEFAULT_SCALE);
+
+        assertEquals(PackedSeries.DELTA_VARINT_V1, packed.encoding());
+        assertEquals(365, packed.dayCount());
+        assertEquals(START, packed.startDate());
+        List<TimeSeriesData.TimeSeriesEntry> unpacked = PackedSeriesCodec.unpack(packed);
+        assertEquals(365, unpacked.size());
+        for (int i = 0; i < 365; i++) {
+            assertEquals(entries.get(i).date(), unpacked.get(i).date());
+            assertEquals(entries.get(i).value(), unpacked.get(i).value(), 0.005f);
+        }
+    }
+
+    @Test
+    void keepsTwoDecimalsExactly() {
+        List<TimeSeriesData.TimeSeriesEntry> entries = List.of(
+                new TimeSeriesData.TimeSeriesEntry(3550.12f, START),
+                new TimeSeriesData.TimeSeriesEntry(3549.99f, START.plusDays(1)),
+                new TimeSeriesData.TimeSeriesEntry(3551.01f, START.plusDays(2))
+        );
+
+        List<TimeSeriesData.TimeSeriesEntry> unpacked = PackedSeriesCodec.unpack(PackedSeriesCodec.pack(entries, 100));
+
+        assertEquals(entries, unpacked);
+    }
+
+    @Test
+    void handlesNegativeValuesAndLargeSteps() {
+        List<TimeSeriesData.TimeSeriesEntry> entries = List.of(
+                new TimeSeriesData.TimeSeriesEntry(-12.5f, START),
+                new TimeSeriesData.TimeSeriesEntry(250000f, START.plusDays(1)),
+                new TimeSeriesData.TimeSeriesEntry(-250000f, START.plusDays(2)),
+                new TimeSeriesData.TimeSeriesEntry(0f, START.plusDays(3))
+        );
+
+        assertEquals(entries, PackedSeriesCodec.unpack(PackedSeriesCodec.pack(entries, 100)));
+    }
+
+    @Test
+    void gapsCantBePacked() {
+        List<TimeSeriesData.TimeSeriesEntry> entries = List.of(
+                new TimeSeriesData.TimeSeriesEntry(1f, START),
+                new TimeSeriesData.TimeSeriesEntry(2f, START.plusDays(2))
+        );
+
+        assertNull(PackedSeriesCodec.pack(entries, 100));
+        assertNull(PackedSeriesCodec.pack(List.of(), 100));
+    }
+
+    @Test
+    void smallStepsTakeOneBytePerDay() {
+        List<TimeSeriesData.TimeSeriesEntry> entries = new ArrayList<>();
+        entries.add(new TimeSeriesData.TimeSeriesEntry(0f, START));
+        for (int i = 1; i < 100; i++) {
+            entries.add(new TimeSeriesData.TimeSeriesEntry(i % 2 == 0 ? 0f : 0.3f, START.plusDays(i)));
+        }
+
+        PackedSeries packed = PackedSeriesCodec.pack(entries, 100);
+
+        assertEquals(100, Base64.getDecoder().decode(packed.values()).length);
+    }
+
+    @Test
+    void rejectsUnknownEncodingsAndTruncatedValues() {
+        PackedSeries unknown = new PackedSeries("delta-varint-v9", 100, START, 1, "AA==");
+        assertThrows(IllegalArgumentException.class, () -> PackedSeriesCodec.unpack(unknown));
+
+        PackedSeries truncated = new PackedSeries(PackedSeries.DELTA_VARINT_V1, 100, START, 3, "AgI=");
+        assertThrows(IllegalArgumentException.class, () -> PackedSeriesCodec.unpack(truncated));
+    }
+
+    @Test
+    void serializerRoundTripsPackedHistory() {
+        Serializer serializer = new Serializer();
+        HistoricalPeriodData data = HistoricalPeriodData.create("powell", HistoricalPeriodData.PeriodType.ROLLING_YEAR,
+                DataType.ELEVATION, List.of(
+                        new TimeSeriesData.TimeSeriesEntry(3550.12f, START),
+                        new TimeSeriesData.TimeSeriesEntry(3550.2f, START.plusDays(1))
+                ));
+
+        Map<String, Object> map = serializer.serializeToPackedMap(data);
+
+        assertFalse(map.containsKey("data"));
+        assertTrue(map.get("packed") instanceof Map<?, ?>);
+        assertEquals(data, serializer.deserializeFromMap(map, HistoricalPeriodData.class));
+    }
+
+    @Test
+    void serializerLeavesGappedHistoryUnpacked() {
+        Serializer serializer = new Serializer();
+        HistoricalPeriodData data = HistoricalPeriodData.create("powell", HistoricalPeriodData.PeriodType.CALENDAR_YEAR,
+                DataType.ELEVATION, List.of(
+                        new TimeSeriesData.TimeSeriesEntry(3550.12f, START),
+                        new TimeSeriesData.TimeSeriesEntry(3550.2f, START.plusDays(5))
+                ));
+
+        Map<String, Object> map = serializer.serializeToPackedMap(data);
+
+        assertFalse(map.containsKey("packed"));
+        assertEquals(data, serializer.deserializeFromMap(map, HistoricalPeriodData.class));
+    }
+}
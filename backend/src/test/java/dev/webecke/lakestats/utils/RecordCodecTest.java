@@ -0,0 +1,134 @@
+package dev.webecke.lakestats.utils;
+
+import dev.webecke.lakestats.model.features.CurrentConditions;
+import dev.webecke.lakestats.model.measurements.DataType;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RecordCodecTest {
+    record Inner(String name, int count) {}
+
+    record Everything(
+            String text,
+            boolean flag,
+            int small,
+            long large,
+            double precise,
+            float level,
+            LocalDate date,
+            LocalDateTime dateTime,
+            ZonedDateTime zoned,
+            DataType type,
+            Inner inner,
+            List<Inner> inners,
+            Map<String, Float> byName,
+            Map<DataType, String> byType,
+            int[] numbers
+    ) {}
+
+    record Primitives(int count, float level, boolean flag, Integer boxed) {}
+
+    @Test
+    void roundTripsEveryComponentType() {
+        Everything original = new Everything(
+                "powell",
+                true,
+                42,
+                1L << 40,
+                0.1,
+                3550.12f,
+                LocalDate.of(2024, 2, 29),
+                LocalDateTime.of(2024, 2, 29, 6, 30, 15),
+                ZonedDateTime.of(2024, 2, 29, 6, 30, 15, 0, ZoneOffset.ofHours(-7)),
+                DataType.ELEVATION,
+                new Inner("a", 1),
+                List.of(new Inner("b", 2), new Inner("c", 3)),
+                Map.of("x", 1.5f),
+                Map.of(DataType.INFLOW, "https://example.com/inflow"),
+                new int[]{1, 2, 3}
+        );
+
+        Everything decoded = RecordCodec.decode(RecordCodec.encode(original), Everything.class);
+
+        assertEquals(original.text(), decoded.text());
+        assertEquals(original.flag(), decoded.flag());
+        assertEquals(original.small(), decoded.small());
+        assertEquals(original.large(), decoded.large());
+        assertEquals(original.precise(), decoded.precise(), 0);
+        assertEquals(original.level(), decoded.level());
+        assertEquals(original.date(), decoded.date());
+        assertEquals(original.dateTime(), decoded.dateTime());
+        assertEquals(original.zoned(), decoded.zoned());
+        assertEquals(original.type(), decoded.type());
+        assertEquals(original.inner(), decoded.inner());
+        assertEquals(original.inners(), decoded.inners());
+        assertEquals(original.byName(), decoded.byName());
+        assertEquals(original.byType(), decoded.byType());
+        assertArrayEquals(original.numbers(), decoded.numbers());
+    }
+
+    @Test
+    void storesValuesTheWayFirestoreExpects() {
+        Map<String, Object> map = RecordCodec.encode(new Everything(
+                "powell", false, 7, 8L, 1.0, 3550.12f,
+                LocalDate.of(2024, 6, 15), null, null, DataType.ELEVATION,
+                null, null, null, null, null));
+
+        assertEquals(7L, map.get("small")); // Firestore only has 64 bit integers
+        assertEquals(3550.12, map.get("level")); // Not 3550.1201171875
+        assertEquals("2024-06-15", map.get("date"));
+        assertEquals("ELEVATION", map.get("type"));
+        assertFalse(map.containsKey("dateTime")); // Null components are left out
+        assertFalse(map.containsKey("inner"));
+    }
+
+    @Test
+    void missingComponentsDecodeToDefaults() {
+        Primitives decoded = RecordCodec.decode(new HashMap<>(), Primitives.class);
+
+        assertEquals(new Primitives(0, 0f, false, null), decoded);
+    }
+
+    @Test
+    void unknownEnumsAreDropped() {
+        Map<String, Object> stored = new HashMap<>();
+        stored.put("type", "NOT_A_TYPE");
+        stored.put("byType", Map.of("NOT_A_TYPE", "a", "INFLOW", "b"));
+
+        Everything decoded = RecordCodec.decode(stored, Everything.class);
+
+        assertNull(decoded.type());
+        assertEquals(Map.of(DataType.INFLOW, "b"), decoded.byType());
+    }
+
+    @Test
+    void emptyDatesDecodeToNull() {
+        Map<String, Object> stored = new HashMap<>();
+        stored.put("date", "");
+
+        assertNull(RecordCodec.decode(stored, Everything.class).date());
+    }
+
+    @Test
+    void roundTripsAModelRecord() {
+        CurrentConditions conditions = new CurrentConditions("powell", LocalDateTime.of(2024, 6, 15, 6, 0),
+                LocalDate.of(2024, 6, 15), 3550.12f, 3550.01f, 3549.5f, 3560f, 3570.25f,
+                1994, 2023, 3600f, 3550f, 3601f, 3650f, 3700f, 3490f, null, -0.5f, 1.5f, 3549.5f, 3551f);
+
+        assertEquals(conditions, RecordCodec.decode(RecordCodec.encode(conditions), CurrentConditions.class));
+    }
+
+    @Test
+    void rejectsNonRecords() {
+        assertThrows(IllegalArgumentException.class, () -> RecordCodec.decode(new HashMap<>(), String.class));
+    }
+}
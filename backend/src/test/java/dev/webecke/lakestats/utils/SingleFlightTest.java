@@ -0,0 +1,127 @@
+package dev.webecke.lakestats.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SingleFlightTest {
+    private static final int WAITERS = 4;
+
+    private final SingleFlight<String, Object> flight = new SingleFlight<>();
+    private final AtomicInteger runs = new AtomicInteger();
+    private final CountDownLatch started = new CountDownLatch(1);
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    @Test
+    void concurrentCallersShareOneResult() throws Exception {
+        Object result = new Object();
+        List<FutureTask<Object>> callers = startCallersWhileRunning("powell", blockingTask(() -> result));
+
+        for (FutureTask<Object> caller : callers) {
+            assertSame(result, caller.get(5, TimeUnit.SECONDS));
+        }
+        assertEquals(1, runs.get());
+    }
+
+    @Test
+    void errorsReachEveryWaiter() throws Exception {
+        IllegalStateException failure = new IllegalStateException("Upstream failed");
+        List<FutureTask<Object>> callers = startCallersWhileRunning("powell", blockingTask(() -> { throw failure; }));
+
+        for (FutureTask<Object> caller : callers) {
+            ExecutionException thrown = assertThrows(ExecutionException.class, () -> caller.get(5, TimeUnit.SECONDS));
+            assertSame(failure, thrown.getCause());
+        }
+        assertEquals(1, runs.get());
+    }
+
+    @Test
+    void finishedRunsAreNotCached() {
+        assertEquals(1, flight.run("powell", () -> runs.incrementAndGet()));
+        assertEquals(2, flight.run("powell", () -> runs.incrementAndGet()));
+    }
+
+    @Test
+    void aFailedRunDoesNotStickToItsKey() {
+        assertThrows(IllegalStateException.class, () -> flight.run("powell", () -> { throw new IllegalStateException(); }));
+        assertEquals("recovered", flight.run("powell", () -> "recovered"));
+    }
+
+    @Test
+    void differentKeysRunSeparately() throws Exception {
+        FutureTask<Object> powell = start(() -> flight.run("powell", blockingTask(() -> "powell")));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        // Would wait for the release if it were coalesced with powell
+        assertEquals("mead", flight.run("mead", () -> "mead"));
+
+        release.countDown();
+        assertEquals("powell", powell.get(5, TimeUnit.SECONDS));
+    }
+
+    /**
+     * @return a task that counts its runs, and doesn't return until {@link #release} is counted down
+     */
+    private Supplier<Object> blockingTask(Supplier<Object> result) {
+        return () -> {
+            runs.incrementAndGet();
+            started.countDown();
+            try {
+                if (!release.await(5, TimeUnit.SECONDS)) { throw new AssertionError("Never released"); }
+            } catch (InterruptedException e) {
+                throw new AssertionError(e);
+            }
+            return result.get();
+        };
+    }
+
+    /**
+     * Starts one caller, and once its task is running, {@link #WAITERS} more that have to wait for it. The task is
+     * only released once every waiter is parked waiting for the result.
+     * @return every caller, the first one is the one that ran the task
+     */
+    private List<FutureTask<Object>> startCallersWhileRunning(String key, Supplier<Object> task) throws Exception {
+        List<FutureTask<Object>> callers = new ArrayList<>();
+        callers.add(start(() -> flight.run(key, task)));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        List<Thread> waiters = new ArrayList<>();
+        for (int i = 0; i < WAITERS; i++) {
+            FutureTask<Object> waiter = new FutureTask<>(() -> flight.run(key, task));
+            Thread thread = new Thread(waiter);
+            thread.start();
+            callers.add(waiter);
+            waiters.add(thread);
+        }
+        for (Thread waiter : waiters) {
+            awaitParked(waiter);
+        }
+
+        release.countDown();
+        return callers;
+    }
+
+    private static FutureTask<Object> start(Callable<Object> call) {
+        FutureTask<Object> future = new FutureTask<>(call);
+        new Thread(future).start();
+        return future;
+    }
+
+    private static void awaitParked(Thread thread) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (thread.getState() != Thread.State.WAITING) {
+            if (System.nanoTime() > deadline) { throw new AssertionError("Caller never started waiting, it is " + thread.getState()); }
+            Thread.sleep(1);
+        }
+    }
+}
@@ -0,0 +1,33 @@
+import useLoadingFetch, { LoadingFetchResult } from "./useLoadingFetch.ts";
+import { dataService, LAKE_SNAPSHOT_SCHEMA_VERSION, LakeSnapshot } from "../../shared/services/data";
+
+/**
+ * Custom hook to fetch everything the lake page needs in a single read, using the lake's snapshot document.
+ * If the lake has no usable snapshot yet, its current conditions are used instead, with everything else left null.
+ * The snapshot's settings and lake details are only copies for the first paint, revalidate them with their own hooks.
+ * @param lakeId - The ID of the lake to fetch the snapshot for
+ */
+export const useLakeSnapshot = (lakeId: string | undefined): LoadingFetchResult<LakeSnapshot> => {
+    return useLoadingFetch<LakeSnapshot>(async () => {
+        if (!lakeId) throw new Error("Lake ID is required");
+
+        // Started alongside the snapshot, so a miss doesn't cost a second round trip. Its result (or error) is
+        // simply dropped when the snapshot is there.
+        const pendingConditions = dataService.getCurrentConditions(lakeId);
+        pendingConditions.catch(() => undefined);
+
+        const snapshot = await dataService.getLakeSnapshot(lakeId);
+        if (snapshot) return snapshot;
+
+        const currentConditions = await pendingConditions;
+        return {
+            schemaVersion: LAKE_SNAPSHOT_SCHEMA_VERSION,
+            lakeId: lakeId,
+            publishedAt: currentConditions?.timeOfCollection ?? new Date(),
+            settings: null,
+            lake: null,
+            currentConditions: currentConditions,
+            past365Days: null,
+        };
+    }, [lakeId]);
+};
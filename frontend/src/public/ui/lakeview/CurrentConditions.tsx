@@ -79,6 +79,23 @@ const CurrentConditions: React.FC<CurrentConditionsProps> = ({
                         />
                     </div>
 
+                    {data.changePastWeek !== undefined && data.changePastMonth !== undefined &&
+                        <div className="stat-row">
+                            <StatItem
+                                value={data.changePastWeek}
+                                label="Past 7 Days"
+                                className="seven-day-change"
+                                tooltip="Change in lake level since the first reading in the past 7 days"
+                            />
+                            <StatItem
+                                value={data.changePastMonth}
+                                label="Past 30 Days"
+                                className="month-change"
+                                tooltip={`Change in lake level since the first reading in the past 30 days [low ${data.lowPastMonth} ft, high ${data.highPastMonth} ft]`}
+                            />
+                        </div>
+                    }
+
                     <div className="stat-row">
                         <StatItem
                             value={data.levelToday - data.levelOneYearAgo}
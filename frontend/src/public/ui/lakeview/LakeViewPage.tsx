@@ -6,7 +6,7 @@ import AccessPointList from "./AccessPointList";
 import LoadingSpinner from "../../../shared/components/LoadingSpinner";
 import { useLakeSystemSettings } from "../../datahooks/useLakeSystemSettings.ts";
 import { useLakeDetails } from "../../datahooks/useLakeDetails";
-import { useCurrentConditions } from "../../datahooks/useCurrentConditions";
+import { useLakeSnapshot } from "../../datahooks/useLakeSnapshot.ts";
 import "./LakeViewStyles.css";
 import { useNavigate, useParams } from "react-router-dom";
 import { PageTitle } from "../../components/PageTitle";
@@ -26,22 +26,28 @@ const LakeViewPage: React.FC = () => {
     );
     const [summaryString, setSummaryString] = useState("");
 
-    // Fetch all the data
+    // Fetch all the data. The lake's snapshot has everything in a single read, all three reads start together
     const {
         loading: loadingSettings,
         error: settingsError,
-        data: lakeSettings,
+        data: liveSettings,
     } = useLakeSystemSettings(lakeId);
     const {
         loading: loadingDetails,
         error: detailsError,
-        data: lakeDetails,
+        data: liveDetails,
     } = useLakeDetails(lakeId);
     const {
         loading: loadingConditions,
         error: conditionsError,
-        data: currentConditions,
-    } = useCurrentConditions(lakeId);
+        data: snapshot,
+    } = useLakeSnapshot(lakeId);
+    const currentConditions = snapshot?.currentConditions ?? null;
+
+    // The snapshot's copies of the settings and lake details are shown until their own documents arrive, which
+    // then replace them, since they can have changed since the snapshot was published
+    const lakeSettings = loadingSettings ? (snapshot?.settings ?? null) : liveSettings;
+    const lakeDetails = loadingDetails ? (snapshot?.lake ?? null) : liveDetails;
 
     useEffect(() => {
         const formatValue = (value: number) => {
@@ -69,8 +75,8 @@ const LakeViewPage: React.FC = () => {
         return <div>Lake ID is required</div>;
     }
 
-    // Show loading state if any data is still loading
-    if (loadingSettings || loadingDetails) {
+    // Show loading state until there is something to show for the settings and lake details
+    if ((loadingSettings && !lakeSettings) || (loadingDetails && !lakeDetails)) {
         return <LoadingSpinner />;
     }
 
@@ -132,10 +138,14 @@ const LakeViewPage: React.FC = () => {
                 </div>
             </Callout>
 
-            <Past365Days
-                lakeSettings={lakeSettings}
-                todayLevel={currentConditions?.levelToday || 0}
-            />
+            {/* Waits for the snapshot, which may already hold the data, so it isn't fetched twice */}
+            {!loadingConditions && (
+                <Past365Days
+                    lakeSettings={lakeSettings}
+                    todayLevel={currentConditions?.levelToday || 0}
+                    yearData={snapshot?.past365Days ?? undefined}
+                />
+            )}
 
             <RegionSelector
                 regions={lakeDetails.regions}
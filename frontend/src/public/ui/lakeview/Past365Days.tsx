@@ -3,21 +3,27 @@ import { Chart } from "chart.js/auto";
 import AsyncContainer from "../../components/AsyncContainer.tsx";
 import { usePast365Days } from "../../datahooks/useHistoricalData.ts";
 import { getFeetAndInchesWithFraction } from "../dataRenderTools.ts";
-import { LakeSystemFeatures, LakeSystemSettings } from "../../../shared/services/data";
+import {
+    HistoricalPeriodData,
+    LakeSystemFeatures,
+    LakeSystemSettings,
+} from "../../../shared/services/data";
 
-const Past365Days: React.FC<{ lakeSettings: LakeSystemSettings; todayLevel: number }> = ({
-    lakeSettings,
-    todayLevel,
-}) => {
+// yearData is already loaded (for example from the lake snapshot) when given, otherwise it is fetched here
+const Past365Days: React.FC<{
+    lakeSettings: LakeSystemSettings;
+    todayLevel: number;
+    yearData?: HistoricalPeriodData | null;
+}> = ({ lakeSettings, todayLevel, yearData: preloadedYearData }) => {
     const graphEnabled = lakeSettings.features.includes(LakeSystemFeatures.PREVIOUS_YEAR_GRAPH); // or however your settings work
 
     const {
         loading: loadingYearData,
         error: yearDataError,
         data: yearData,
-    } = graphEnabled
+    } = graphEnabled && preloadedYearData === undefined
         ? usePast365Days(lakeSettings.lakeId)
-        : { loading: false, error: null, data: null };
+        : { loading: false, error: null, data: preloadedYearData ?? null };
 
     if (!graphEnabled) {
         return null;
@@ -20,8 +20,11 @@ import {
     CurrentConditions,
     AccessPoint,
     HistoricalPeriodData,
+    LakeSnapshot,
+    LAKE_SNAPSHOT_SCHEMA_VERSION,
 } from "./types.ts";
 import { getFirestoreDb } from "../../../firebase/config.ts";
+import { PackedSeries, unpackSeries } from "./packed-series.ts";
 
 export class FirestoreService implements DataService {
     private db = getFirestoreDb();
@@ -104,9 +107,44 @@ export class FirestoreService implements DataService {
 
         if (!docSnap.exists()) return null;
 
+        return this.toHistoricalPeriodData(docSnap.data());
+    }
+
+    // Returns null when there is no snapshot, or it is newer than this build understands
+    async getLakeSnapshot(lakeId: string): Promise<LakeSnapshot | null> {
+        const docRef = doc(this.db, lakeId, "lake_snapshot");
+        const docSnap = await getDoc(docRef);
+
+        if (!docSnap.exists()) return null;
+
         const data = docSnap.data();
+        if (typeof data.schemaVersion !== "number" || data.schemaVersion > LAKE_SNAPSHOT_SCHEMA_VERSION) {
+            return null;
+        }
+
+        const conditions = data.currentConditions;
 
-        return data as HistoricalPeriodData;
+        // Version 2 snapshots have no settings or lake details
+        return {
+            schemaVersion: data.schemaVersion,
+            lakeId: data.lakeId,
+            publishedAt: this.parseISODate(data.publishedAt),
+            settings: data.settings ? (data.settings as LakeSystemSettings) : null,
+            lake: data.lake
+                ? ({
+                      ...data.lake,
+                      dataSources: this.convertObjectToMap(data.lake.dataSources || {}),
+                  } as LakeMetaData)
+                : null,
+            currentConditions: conditions
+                ? ({
+                      ...conditions,
+                      timeOfCollection: this.parseISODate(conditions.timeOfCollection),
+                      date: this.parseISODate(conditions.date),
+                  } as CurrentConditions)
+                : null,
+            past365Days: data.past365Days ? this.toHistoricalPeriodData(data.past365Days) : null,
+        } as LakeSnapshot;
     }
 
     //////////////////////////////
@@ -295,6 +333,15 @@ export class FirestoreService implements DataService {
         return obj;
     }
 
+    // History may be stored packed (see packed-series.ts), in which case the entries are rebuilt here
+    private toHistoricalPeriodData(stored: Record<string, unknown>): HistoricalPeriodData {
+        const { packed, ...data } = stored;
+        if (packed) {
+            return { ...data, data: unpackSeries(packed as PackedSeries) } as HistoricalPeriodData;
+        }
+        return data as unknown as HistoricalPeriodData;
+    }
+
     private convertObjectToMap(obj: Record<string, string>): Map<DataType, string> {
         const map = new Map<DataType, string>();
         Object.entries(obj).forEach(([key, value]) => {
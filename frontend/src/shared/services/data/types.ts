@@ -39,6 +39,7 @@ export enum LakeSystemFeatures {
     REGIONS = "REGIONS",
     ACCESS_POINTS = "ACCESS_POINTS",
     PREVIOUS_YEAR_GRAPH = "PREVIOUS_YEAR_GRAPH",
+    CALENDAR_YEAR_ARCHIVE = "CALENDAR_YEAR_ARCHIVE",
 }
 
 export interface LakeRegion {
@@ -67,6 +68,23 @@ export interface CurrentConditions {
     levelTwoWeeksAgo: number;
     levelOneYearAgo: number;
     levelTenYearAverage: number;
+    // Long-term normals for this day of the year, over normalFirstYear to normalLastYear.
+    // Missing when there is no history for this day of the year in that span.
+    normalFirstYear?: number;
+    normalLastYear?: number;
+    normalAverage?: number;
+    normalP10?: number;
+    normalMedian?: number;
+    normalP90?: number;
+    recordHigh?: number;
+    recordLow?: number;
+    percentileRank?: number;
+    // Change since the first reading in the past 7 and 30 days, and the range over the past 30 days.
+    // Missing on documents published before they were added.
+    changePastWeek?: number;
+    changePastMonth?: number;
+    lowPastMonth?: number;
+    highPastMonth?: number;
 }
 
 export interface SystemError {
@@ -92,6 +110,23 @@ export interface HistoricalPeriodData {
     }[];
 }
 
+// Newest lake_snapshot schema this build understands, see LakeSnapshot.java
+export const LAKE_SNAPSHOT_SCHEMA_VERSION = 3;
+
+// Everything the lake page needs, published by the backend as a single document
+export interface LakeSnapshot {
+    schemaVersion: number;
+    lakeId: string;
+    publishedAt: Date;
+    // As of the run that published the snapshot, so only good for the first paint. They can change between runs
+    // and have to be revalidated against their own documents. Missing from version 2 snapshots.
+    settings: LakeSystemSettings | null;
+    lake: LakeMetaData | null;
+    currentConditions: CurrentConditions | null;
+    // Only for lakes that had the PREVIOUS_YEAR_GRAPH feature when the snapshot was published
+    past365Days: HistoricalPeriodData | null;
+}
+
 export interface DataService {
     updateLakeRegionAccessPoints(
         lakeId: string,
@@ -115,4 +150,5 @@ export interface DataService {
     ): Promise<void>;
     getCurrentConditions(lakeId: string): Promise<CurrentConditions | null>;
     getPast365Days(lakeId: string): Promise<HistoricalPeriodData | null>;
+    getLakeSnapshot(lakeId: string): Promise<LakeSnapshot | null>;
 }